@@ -0,0 +1,246 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.a3.halfedge;
+
+import com.jme3.math.Vector3f;
+import wpcg.base.Logger;
+import wpcg.base.LongIntHashMap;
+import wpcg.base.mesh.TriangleMesh;
+
+import java.util.Arrays;
+
+/**
+ * Index based half edge triangle mesh: the same topology as HalfEdgeTriangleMesh, but stored in parallel arrays
+ * instead of linked objects.
+ * <p>
+ * Half edge he = 3 * facet + k is the k-th half edge of its facet, so next, previous and facet are implicit (no
+ * storage). Per half edge only the start vertex and the opposite half edge are stored, per vertex the position
+ * and one outgoing half edge. This takes about a fifth of the memory of the object representation and keeps
+ * neighboring elements close together in memory.
+ */
+public class CompactHalfEdgeMesh {
+
+    /**
+     * Marks a missing opposite half edge (boundary) or a vertex without half edge.
+     */
+    public static final int NONE = -1;
+
+    /**
+     * Vertex positions, 3 floats (x, y, z) per vertex.
+     */
+    private final float[] positions;
+
+    /**
+     * Start vertex index for each half edge.
+     */
+    private final int[] startVertex;
+
+    /**
+     * Opposite half edge index for each half edge, NONE at the boundary.
+     */
+    private final int[] opposite;
+
+    /**
+     * One outgoing half edge for each vertex. For boundary vertices this is the boundary half edge, so rotating
+     * around the vertex with getNextOutgoing() visits all adjacent facets.
+     */
+    private final int[] vertexHalfEdge;
+
+    private CompactHalfEdgeMesh(float[] positions, int[] triangleIndices) {
+        this.positions = positions;
+        this.startVertex = triangleIndices;
+        this.opposite = new int[triangleIndices.length];
+        this.vertexHalfEdge = new int[positions.length / 3];
+        connectHalfEdges();
+    }
+
+    /**
+     * Creates a compact half edge mesh from a regular mesh.
+     */
+    public static CompactHalfEdgeMesh from(TriangleMesh mesh) {
+        CompactHalfEdgeMesh compactMesh = new CompactHalfEdgeMesh(mesh.getPositionArray(),
+                mesh.getTriangleIndexArray());
+        Logger.getInstance().debug("Created compact half edge mesh from mesh with " + mesh.getNumberOfTriangles()
+                + " triangles.");
+        return compactMesh;
+    }
+
+    /**
+     * Creates a compact half edge mesh from a half edge mesh.
+     */
+    public static CompactHalfEdgeMesh from(HalfEdgeTriangleMesh mesh) {
+        float[] positions = new float[3 * mesh.getNumberOfVertices()];
+        for (int i = 0; i < mesh.getNumberOfVertices(); i++) {
+            Vector3f p = mesh.getVertex(i).getPosition();
+            positions[3 * i] = p.x;
+            positions[3 * i + 1] = p.y;
+            positions[3 * i + 2] = p.z;
+        }
+        return new CompactHalfEdgeMesh(positions, mesh.getTriangleIndexArray());
+    }
+
+    /**
+     * Creates a triangle mesh from the compact half edge mesh (shared vertices).
+     */
+    public TriangleMesh toMesh() {
+        TriangleMesh mesh = new TriangleMesh();
+        for (int v = 0; v < getNumberOfVertices(); v++) {
+            mesh.addVertex(new Vector3f(positions[3 * v], positions[3 * v + 1], positions[3 * v + 2]));
+        }
+        for (int f = 0; f < getNumberOfTriangles(); f++) {
+            mesh.addTriangle(startVertex[3 * f], startVertex[3 * f + 1], startVertex[3 * f + 2]);
+        }
+        mesh.computeTriangleNormals();
+        return mesh;
+    }
+
+    /**
+     * Connect opposite half edges via a hash map over packed (start, end) vertex indices and assign an outgoing
+     * half edge to each vertex (the boundary half edge for boundary vertices). Half edges of non-manifold edges are
+     * connected in pairs in the order of the half edges, like in HalfEdgeTriangleMesh.connectHalfEdges().
+     */
+    private void connectHalfEdges() {
+        Arrays.fill(opposite, NONE);
+        Arrays.fill(vertexHalfEdge, NONE);
+        LongIntHashMap edgeMap = new LongIntHashMap(getNumberOfHalfEdges() / 2);
+        for (int he = 0; he < getNumberOfHalfEdges(); he++) {
+            int start = startVertex[he];
+            int end = getEndVertex(he);
+            int other = edgeMap.get(LongIntHashMap.pack(end, start));
+            if (other != LongIntHashMap.NO_VALUE && opposite[other] == NONE) {
+                opposite[he] = other;
+                opposite[other] = he;
+            } else {
+                long key = LongIntHashMap.pack(start, end);
+                int stored = edgeMap.get(key);
+                if (stored == LongIntHashMap.NO_VALUE || opposite[stored] != NONE) {
+                    edgeMap.put(key, he);
+                }
+            }
+        }
+        for (int he = 0; he < getNumberOfHalfEdges(); he++) {
+            int v = startVertex[he];
+            if (vertexHalfEdge[v] == NONE || opposite[he] == NONE) {
+                vertexHalfEdge[v] = he;
+            }
+        }
+    }
+
+    // +++ TRAVERSAL ++++++++++++++++++
+
+    /**
+     * Next half edge within the facet.
+     */
+    public int getNext(int he) {
+        return he % 3 == 2 ? he - 2 : he + 1;
+    }
+
+    /**
+     * Previous half edge within the facet.
+     */
+    public int getPrev(int he) {
+        return he % 3 == 0 ? he + 2 : he - 1;
+    }
+
+    /**
+     * Opposite half edge, NONE at the boundary.
+     */
+    public int getOpposite(int he) {
+        return opposite[he];
+    }
+
+    public int getStartVertex(int he) {
+        return startVertex[he];
+    }
+
+    public int getEndVertex(int he) {
+        return startVertex[getNext(he)];
+    }
+
+    public int getFacet(int he) {
+        return he / 3;
+    }
+
+    /**
+     * Returns the first half edge of the facet.
+     */
+    public int getHalfEdgeOfFacet(int facet) {
+        return 3 * facet;
+    }
+
+    /**
+     * Returns an outgoing half edge of the vertex, NONE for an isolated vertex.
+     */
+    public int getHalfEdgeOfVertex(int vertex) {
+        return vertexHalfEdge[vertex];
+    }
+
+    /**
+     * Rotate around the start vertex of the outgoing half edge he: returns the next outgoing half edge, NONE if
+     * the boundary is reached.
+     */
+    public int getNextOutgoing(int he) {
+        return opposite[getPrev(he)];
+    }
+
+    /**
+     * Returns true if the edge is at the boundary (has no opposite half edge).
+     */
+    public boolean isBoundary(int he) {
+        return opposite[he] == NONE;
+    }
+
+    /**
+     * Returns true if the mesh has a boundary.
+     */
+    public boolean hasBoundary() {
+        for (int o : opposite) {
+            if (o == NONE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // +++ GETTER/SETTER ++++++++++++++++++
+
+    public int getNumberOfVertices() {
+        return vertexHalfEdge.length;
+    }
+
+    public int getNumberOfTriangles() {
+        return startVertex.length / 3;
+    }
+
+    public int getNumberOfHalfEdges() {
+        return startVertex.length;
+    }
+
+    /**
+     * Write the position of the vertex into store and return it.
+     */
+    public Vector3f getPosition(int vertex, Vector3f store) {
+        return store.set(positions[3 * vertex], positions[3 * vertex + 1], positions[3 * vertex + 2]);
+    }
+
+    public void setPosition(int vertex, float x, float y, float z) {
+        positions[3 * vertex] = x;
+        positions[3 * vertex + 1] = y;
+        positions[3 * vertex + 2] = z;
+    }
+
+    public float getX(int vertex) {
+        return positions[3 * vertex];
+    }
+
+    public float getY(int vertex) {
+        return positions[3 * vertex + 1];
+    }
+
+    public float getZ(int vertex) {
+        return positions[3 * vertex + 2];
+    }
+}
@@ -76,6 +76,10 @@ public class HalfEdgeTriangle {
         this.normal = normal;
     }
 
+    public Vector3f getNormal() {
+        return normal;
+    }
+
     public void setColor(ColorRGBA color) {
         this.color = color;
     }
@@ -8,14 +8,19 @@ package wpcg.a3.halfedge;
 import com.jme3.bounding.BoundingBox;
 import com.jme3.math.ColorRGBA;
 import com.jme3.math.Vector3f;
+import wpcg.base.mesh.MeshAdjacency;
+import wpcg.base.mesh.MeshBounds;
+import wpcg.base.mesh.MeshTopology;
 import wpcg.base.mesh.Triangle;
 import wpcg.base.mesh.TriangleMesh;
 import wpcg.base.Logger;
+import wpcg.base.LongIntHashMap;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 
 /**
  * A triangle mesh a a list of triangles, a list of half edges and a list of
@@ -51,6 +56,21 @@ public class HalfEdgeTriangleMesh {
      */
     private Map<HalfEdgeVertex, HalfEdge> cacheSplitVertex2HeMap;
 
+    /**
+     * Bounds of the vertex positions, kept up to date incrementally when vertices are added.
+     */
+    private MeshBounds bounds;
+
+    /**
+     * False if the positions changed and the bounds must be recomputed.
+     */
+    private boolean boundsValid;
+
+    /**
+     * Cached topology report, null if the triangles changed since it was computed.
+     */
+    private MeshTopology topology;
+
     // +++ CONSTRUCTION/TRANSFORMATION ACCESS ++++++++++++++++++
 
     public HalfEdgeTriangleMesh() {
@@ -59,6 +79,9 @@ public class HalfEdgeTriangleMesh {
         halfEdges = new ArrayList<HalfEdge>();
         cacheSplitHe2VertexMap = null;
         cacheSplitVertex2HeMap = null;
+        bounds = new MeshBounds();
+        boundsValid = true;
+        topology = null;
     }
 
     /**
@@ -83,25 +106,25 @@ public class HalfEdgeTriangleMesh {
     }
 
     /**
-     * Creates a triangle mesh from a half edge triangle mesh.
-     * <p>
-     * Attention: the resulting mesh is a triangle soup. If the vertices shall be reconnected, call
-     * TriangleMeshTools.mergeVertices(mesh);
+     * Creates a triangle mesh from a half edge triangle mesh. The vertices are shared between the triangles: each
+     * half edge vertex becomes exactly one vertex of the mesh (same index).
      */
     public TriangleMesh toMesh() {
         TriangleMesh mesh = new TriangleMesh();
+        for (HalfEdgeVertex v : vertices) {
+            mesh.addVertex(v.getPosition());
+        }
         for (HalfEdgeTriangle t : triangles) {
             HalfEdge he = t.getHalfEdge();
-            int index = mesh.addVertex(he.getStartVertex().getPosition());
+            int a = he.getStartVertex().getIndex();
             he = he.getNext();
-            mesh.addVertex(he.getStartVertex().getPosition());
+            int b = he.getStartVertex().getIndex();
             he = he.getNext();
-            mesh.addVertex(he.getStartVertex().getPosition());
-            int iIndex = mesh.addTriangle(index, index + 1, index + 2);
+            int c = he.getStartVertex().getIndex();
+            int iIndex = mesh.addTriangle(a, b, c);
             Triangle triangle = mesh.getTriangle(iIndex);
             triangle.setColor(t.getColor());
         }
-        //TriangleMeshTools.mergeVertices(mesh);
         mesh.computeTriangleNormals();
         Logger.getInstance().debug("Created triangle mesh from half edge mesh with " + this.getNumberOfTriangles()
                 + " triangles.");
@@ -133,6 +156,7 @@ public class HalfEdgeTriangleMesh {
         halfEdges.add(halfEdge2);
         halfEdges.add(halfEdge3);
         triangles.add(facet);
+        topology = null;
         return triangles.size() - 1;
     }
 
@@ -143,10 +167,17 @@ public class HalfEdgeTriangleMesh {
         vertices.clear();
         triangles.clear();
         halfEdges.clear();
+        bounds.clear();
+        boundsValid = true;
+        topology = null;
     }
 
     public int addVertex(HalfEdgeVertex v) {
+        v.setIndex(vertices.size());
         vertices.add(v);
+        if (boundsValid) {
+            bounds.include(v.getPosition());
+        }
         return vertices.size() - 1;
     }
 
@@ -160,6 +191,7 @@ public class HalfEdgeTriangleMesh {
 
     public void addTriangle(HalfEdgeTriangle t) {
         triangles.add(t);
+        topology = null;
     }
 
     // +++ READING ACCESS ++++++++++++++++++
@@ -201,15 +233,37 @@ public class HalfEdgeTriangleMesh {
     }
 
     /**
-     * Returns true if the mesh has a boundary.
+     * Returns the triangles as flat index array (3 vertex indices per triangle).
      */
-    public boolean hasBoudary() {
-        for (HalfEdge he : halfEdges) {
-            if (he.getOpposite() == null) {
-                return true;
+    public int[] getTriangleIndexArray() {
+        int[] triangleIndices = new int[3 * getNumberOfTriangles()];
+        IntStream.range(0, getNumberOfTriangles()).parallel().forEach(i -> {
+            HalfEdge he = triangles.get(i).getHalfEdge();
+            for (int k = 0; k < 3; k++) {
+                triangleIndices[3 * i + k] = he.getStartVertex().getIndex();
+                he = he.getNext();
             }
+        });
+        return triangleIndices;
+    }
+
+    /**
+     * Returns true if the mesh has a boundary (from the cached topology report).
+     */
+    public boolean hasBoudary() {
+        return getTopology().hasBoundary();
+    }
+
+    /**
+     * Returns the topology report of the mesh (boundary, manifoldness, orientation, components, genus). It is
+     * computed on the first call and cached until the triangles change.
+     */
+    public MeshTopology getTopology() {
+        if (topology == null) {
+            topology = MeshTopology.from(getNumberOfVertices(), getTriangleIndexArray());
+            Logger.getInstance().debug("Computed topology: " + topology);
         }
-        return false;
+        return topology;
     }
 
     // +++ OPERATIONS ++++++++++++++++++
@@ -218,7 +272,10 @@ public class HalfEdgeTriangleMesh {
      * Finally, opposite half edges must be connected and each vertex must be
      * assigned a outgoing half edge.
      * <p>
-     * Attention: O(n^2)!
+     * The half edges are hashed by their packed (start vertex index, end vertex index) pair, so the opposite of a
+     * half edge is found with a single lookup of the reversed pair: O(n). If more than two half edges share an
+     * edge (non-manifold), they are connected in pairs in the order of the half edges: a stored half edge is
+     * replaced once it has an opposite, so the next pair of the edge finds each other.
      */
     public void connectHalfEdges() {
         // Set half edge for each vertex
@@ -228,18 +285,26 @@ public class HalfEdgeTriangleMesh {
             halfEdge.getStartVertex().setHalfEgde(halfEdge);
         }
 
-        // Connect opposite halfEdges
+        // Connect opposite halfEdges: look up (end, start) among the half edges seen so far, otherwise remember
+        // the half edge under (start, end) for its opposite.
+        LongIntHashMap edgeMap = new LongIntHashMap(getNumberOfHalfEdges() / 2);
         for (int i = 0; i < getNumberOfHalfEdges(); i++) {
             HalfEdge halfEdge1 = getHalfEdge(i);
-            if (halfEdge1.getOpposite() == null) {
-                for (int j = i + 1; j < getNumberOfHalfEdges(); j++) {
-                    HalfEdge halfEdge2 = getHalfEdge(j);
-                    if (halfEdge1.getStartVertex() == halfEdge2.getEndVertex()
-                            && halfEdge2.getStartVertex() == halfEdge1.getEndVertex()) {
-                        halfEdge1.setOpposite(halfEdge2);
-                        halfEdge2.setOpposite(halfEdge1);
-                        break;
-                    }
+            if (halfEdge1.getOpposite() != null) {
+                continue;
+            }
+            int start = halfEdge1.getStartVertex().getIndex();
+            int end = halfEdge1.getEndVertex().getIndex();
+            int j = edgeMap.get(LongIntHashMap.pack(end, start));
+            if (j != LongIntHashMap.NO_VALUE && getHalfEdge(j).getOpposite() == null) {
+                HalfEdge halfEdge2 = getHalfEdge(j);
+                halfEdge1.setOpposite(halfEdge2);
+                halfEdge2.setOpposite(halfEdge1);
+            } else {
+                long key = LongIntHashMap.pack(start, end);
+                int stored = edgeMap.get(key);
+                if (stored == LongIntHashMap.NO_VALUE || getHalfEdge(stored).getOpposite() != null) {
+                    edgeMap.put(key, i);
                 }
             }
         }
@@ -247,61 +312,84 @@ public class HalfEdgeTriangleMesh {
     }
 
     /**
-     * Computes the normals for all triangles/facets in the mesh.
+     * Computes the vertex and face adjacency (CSR arrays) of the mesh. The vertex and face indices are the indices
+     * in the vertex and triangle lists.
+     */
+    public MeshAdjacency computeAdjacency() {
+        return MeshAdjacency.from(getNumberOfVertices(), getTriangleIndexArray());
+    }
+
+    /**
+     * Computes the normals for all triangles/facets in the mesh (in parallel, on primitive coordinates).
      */
     public void computeTriangleNormals() {
-        for (int triangleIndex =
-             0; triangleIndex < getNumberOfTriangles(); triangleIndex++) {
+        IntStream.range(0, getNumberOfTriangles()).parallel().forEach(triangleIndex -> {
             HalfEdgeTriangle facet = triangles.get(triangleIndex);
             HalfEdge he = facet.getHalfEdge();
-            HalfEdgeVertex v1 = he.getStartVertex();
-            HalfEdgeVertex v2 = he.getNext().getStartVertex();
-            HalfEdgeVertex v3 = he.getNext().getNext().getStartVertex();
-            Vector3f u = v2.getPosition().subtract(v1.getPosition());
-            Vector3f v = v3.getPosition().subtract(v1.getPosition());
-            Vector3f normal = u.cross(v);
-            normal = normal.normalize();
-            facet.setNormal(normal);
-        }
+            Vector3f a = he.getStartVertex().getPosition();
+            Vector3f b = he.getNext().getStartVertex().getPosition();
+            Vector3f c = he.getNext().getNext().getStartVertex().getPosition();
+            float ux = b.x - a.x, uy = b.y - a.y, uz = b.z - a.z;
+            float vx = c.x - a.x, vy = c.y - a.y, vz = c.z - a.z;
+            float nx = uy * vz - uz * vy;
+            float ny = uz * vx - ux * vz;
+            float nz = ux * vy - uy * vx;
+            float norm = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (norm > 0) {
+                nx /= norm;
+                ny /= norm;
+                nz /= norm;
+            }
+            facet.setNormal(new Vector3f(nx, ny, nz));
+        });
         Logger.getInstance().debug("Successfully computed face normals.");
     }
 
     /**
-     * Returns the AABB bounding box of the mesh vertices.
+     * Returns the AABB bounding box of the mesh vertices. The bounds are maintained incrementally, they are only
+     * recomputed after positionsChanged().
      */
     public BoundingBox getBoundingBox() {
-        Vector3f ll = new Vector3f(Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE);
-        Vector3f ur = new Vector3f(Float.MIN_VALUE, Float.MIN_VALUE, Float.MIN_VALUE);
-        for (HalfEdgeVertex v : vertices) {
-            for (int i = 0; i < 3; i++) {
-                if (v.getPosition().get(i) < ll.get(i)) {
-                    ll.set(i, v.getPosition().get(i));
-                }
-                if (v.getPosition().get(i) > ur.get(i)) {
-                    ur.set(i, v.getPosition().get(i));
-                }
+        if (!boundsValid) {
+            bounds.clear();
+            for (HalfEdgeVertex v : vertices) {
+                bounds.include(v.getPosition());
             }
+            boundsValid = true;
         }
-        Vector3f extend = ur.subtract(ll);
-        BoundingBox bbox = new BoundingBox(ur.add(ll).mult(0.5f), extend.x, extend.y, extend.z);
-        return bbox;
+        return bounds.toBoundingBox();
+    }
+
+    /**
+     * Must be called after vertex positions were modified directly (via HalfEdgeVertex.getPosition()).
+     */
+    public void positionsChanged() {
+        boundsValid = false;
     }
 
 
     /**
      * Split each triangle into four sub-triangles.
      * <p>
-     * The old half edges and facets are kept and should be replaced later.
+     * The old half edges and facets are replaced by the new ones. The opposites of the new half edges are set
+     * locally (inner edges within the old facet, outer edges with the halves of the opposite old half edge), so
+     * no relinking of the whole mesh is required: O(n).
      *
      * @return Mapping between the newly created vertices and the old half edges they were created from.
      */
     public Map<HalfEdgeVertex, HalfEdge> split() {
         // Create 4 triangles for each old triangle
-        int oldNumTriangles = getNumberOfTriangles();
+        List<HalfEdgeTriangle> oldTriangles = triangles;
+        triangles = new ArrayList<>(4 * oldTriangles.size());
+        halfEdges = new ArrayList<>(12 * oldTriangles.size());
+        topology = null;
         cacheSplitHe2VertexMap = new HashMap<>();
         cacheSplitVertex2HeMap = new HashMap<>();
-        for (int i = 0; i < oldNumTriangles; i++) {
-            HalfEdgeTriangle triangle = triangles.get(i);
+        // Old half edge -> new half edges covering its first half (starting at the old start vertex) and its
+        // second half (ending at the old end vertex).
+        Map<HalfEdge, HalfEdge> firstHalf = new HashMap<>();
+        Map<HalfEdge, HalfEdge> secondHalf = new HashMap<>();
+        for (HalfEdgeTriangle triangle : oldTriangles) {
             HalfEdge he = triangle.getHalfEdge();
             HalfEdge heNext = he.getNext();
             HalfEdge heNextNext = heNext.getNext();
@@ -311,12 +399,21 @@ public class HalfEdgeTriangleMesh {
             HalfEdgeVertex va_ = createVertexHalfEdgeSplit(he);
             HalfEdgeVertex vb_ = createVertexHalfEdgeSplit(heNext);
             HalfEdgeVertex vc_ = createVertexHalfEdgeSplit(heNextNext);
-            createHalfEdgeTriangle(va, va_, vc_, triangle.getColor());
-            createHalfEdgeTriangle(vb, vb_, va_, triangle.getColor());
-            createHalfEdgeTriangle(vc, vc_, vb_, triangle.getColor());
-            createHalfEdgeTriangle(va_, vb_, vc_, triangle.getColor());
+            HalfEdge cornerA = createHalfEdgeTriangle(va, va_, vc_, triangle.getColor());
+            HalfEdge cornerB = createHalfEdgeTriangle(vb, vb_, va_, triangle.getColor());
+            HalfEdge cornerC = createHalfEdgeTriangle(vc, vc_, vb_, triangle.getColor());
+            HalfEdge center = createHalfEdgeTriangle(va_, vb_, vc_, triangle.getColor());
+
+            // Inner edges
+            connectOpposite(cornerA.getNext(), center.getNext().getNext());
+            connectOpposite(cornerB.getNext(), center);
+            connectOpposite(cornerC.getNext(), center.getNext());
+
+            // Outer edges
+            splitHalfEdge(he, cornerA, cornerB.getNext().getNext(), firstHalf, secondHalf);
+            splitHalfEdge(heNext, cornerB, cornerC.getNext().getNext(), firstHalf, secondHalf);
+            splitHalfEdge(heNextNext, cornerC, cornerA.getNext().getNext(), firstHalf, secondHalf);
         }
-        connectHalfEdges();
 
         // Reset cache data structure
         cacheSplitHe2VertexMap = null;
@@ -324,9 +421,32 @@ public class HalfEdgeTriangleMesh {
     }
 
     /**
-     * Create a new facet for the given vertices.
+     * Register the two new half edges replacing the old half edge he. If the opposite of he was already split,
+     * the new half edges are connected with its halves.
+     */
+    private void splitHalfEdge(HalfEdge he, HalfEdge first, HalfEdge second,
+                               Map<HalfEdge, HalfEdge> firstHalf, Map<HalfEdge, HalfEdge> secondHalf) {
+        firstHalf.put(he, first);
+        secondHalf.put(he, second);
+        HalfEdge opposite = he.getOpposite();
+        if (opposite != null && firstHalf.containsKey(opposite)) {
+            connectOpposite(first, secondHalf.get(opposite));
+            connectOpposite(second, firstHalf.get(opposite));
+        }
+    }
+
+    /**
+     * Connect two half edges as opposites of each other.
+     */
+    private static void connectOpposite(HalfEdge he1, HalfEdge he2) {
+        he1.setOpposite(he2);
+        he2.setOpposite(he1);
+    }
+
+    /**
+     * Create a new facet for the given vertices, returns its first half edge (starting at a).
      */
-    private void createHalfEdgeTriangle(HalfEdgeVertex a, HalfEdgeVertex b, HalfEdgeVertex c, ColorRGBA color) {
+    private HalfEdge createHalfEdgeTriangle(HalfEdgeVertex a, HalfEdgeVertex b, HalfEdgeVertex c, ColorRGBA color) {
         HalfEdge he1 = new HalfEdge(a);
         HalfEdge he2 = new HalfEdge(b);
         HalfEdge he3 = new HalfEdge(c);
@@ -346,6 +466,7 @@ public class HalfEdgeTriangleMesh {
         halfEdges.add(he2);
         halfEdges.add(he3);
         triangles.add(triangle);
+        return he1;
     }
 
     /**
@@ -375,6 +496,7 @@ public class HalfEdgeTriangleMesh {
      */
     public void removeTriangle(int index) {
         triangles.remove(index);
+        topology = null;
     }
 
     /**
@@ -382,5 +504,6 @@ public class HalfEdgeTriangleMesh {
      */
     public void removeHalfEdge(int index) {
         halfEdges.remove(index);
+        topology = null;
     }
 }
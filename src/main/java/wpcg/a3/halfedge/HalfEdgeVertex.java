@@ -24,6 +24,11 @@ public class HalfEdgeVertex  {
      */
     private Vector3f pos;
 
+    /**
+     * Index of the vertex in the vertex list of its mesh, -1 if not yet added to a mesh.
+     */
+    private int index;
+
     /**
      * Constructor.
      *
@@ -31,6 +36,7 @@ public class HalfEdgeVertex  {
      */
     public HalfEdgeVertex(Vector3f position) {
         this.pos = position;
+        this.index = -1;
     }
 
     @Override
@@ -51,4 +57,15 @@ public class HalfEdgeVertex  {
     public Vector3f getPosition() {
         return pos;
     }
-}
\ No newline at end of file
+
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Set by the mesh when the vertex is added to its vertex list.
+     */
+    void setIndex(int index) {
+        this.index = index;
+    }
+}
\ No newline at end of file
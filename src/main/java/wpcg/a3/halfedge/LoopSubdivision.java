@@ -0,0 +1,203 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.a3.halfedge;
+
+import com.jme3.math.Vector3f;
+import wpcg.base.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Loop subdivision of a half edge triangle mesh: each level splits all triangles into four (split()) and
+ * smoothes the vertex positions.
+ * <p>
+ * Boundary edges and creases (edges with a dihedral angle above the crease angle) are kept sharp: vertices on
+ * exactly two sharp edges follow the curve rule, vertices on more than two sharp edges are corners and stay in
+ * place. All new positions are computed in parallel from the positions of the previous level before any of them
+ * is written.
+ */
+public class LoopSubdivision {
+
+    /**
+     * Edges with a larger angle between the adjacent facet normals are treated as creases.
+     */
+    private final float creaseAngle;
+
+    /**
+     * Subdivision without creases, only boundary edges are kept sharp.
+     */
+    public LoopSubdivision() {
+        this((float) Math.PI);
+    }
+
+    /**
+     * Subdivision with creases: edges where the adjacent facet normals enclose an angle larger than creaseAngle
+     * (radians) are kept sharp.
+     */
+    public LoopSubdivision(float creaseAngle) {
+        this.creaseAngle = creaseAngle;
+    }
+
+    /**
+     * Apply the given number of subdivision levels to the mesh.
+     */
+    public void subdivide(HalfEdgeTriangleMesh mesh, int levels) {
+        for (int level = 0; level < levels; level++) {
+            subdivide(mesh);
+        }
+        Logger.getInstance().debug("Loop subdivision: " + levels + " levels, " + mesh.getNumberOfTriangles()
+                + " triangles.");
+    }
+
+    /**
+     * Apply one level of subdivision to the mesh.
+     */
+    public void subdivide(HalfEdgeTriangleMesh mesh) {
+        // Facet normals of the old level are required for the crease test.
+        mesh.computeTriangleNormals();
+        float cosCreaseAngle = (float) Math.cos(creaseAngle);
+
+        // Positions of the old vertices (computed on the old topology)
+        int numberOfOldVertices = mesh.getNumberOfVertices();
+        float[] evenPositions = new float[3 * numberOfOldVertices];
+        IntStream.range(0, numberOfOldVertices).parallel().forEach(
+                v -> computeEvenPosition(mesh.getVertex(v), cosCreaseAngle, evenPositions, 3 * v));
+
+        // Positions of the new vertices (computed from the old half edges they were created from)
+        Map<HalfEdgeVertex, HalfEdge> newVertices = mesh.split();
+        List<HalfEdgeVertex> oddVertices = new ArrayList<>(newVertices.keySet());
+        float[] oddPositions = new float[3 * oddVertices.size()];
+        IntStream.range(0, oddVertices.size()).parallel().forEach(i -> computeOddPosition(
+                newVertices.get(oddVertices.get(i)), cosCreaseAngle, oddPositions, 3 * i));
+
+        // Write all positions
+        IntStream.range(0, numberOfOldVertices).parallel().forEach(v -> mesh.getVertex(v).getPosition().set(
+                evenPositions[3 * v], evenPositions[3 * v + 1], evenPositions[3 * v + 2]));
+        IntStream.range(0, oddVertices.size()).parallel().forEach(i -> oddVertices.get(i).getPosition().set(
+                oddPositions[3 * i], oddPositions[3 * i + 1], oddPositions[3 * i + 2]));
+        mesh.positionsChanged();
+        mesh.computeTriangleNormals();
+    }
+
+    /**
+     * Compute the new position of an old vertex from its one-ring and write it to target[offset..offset+2].
+     */
+    private void computeEvenPosition(HalfEdgeVertex vertex, float cosCreaseAngle, float[] target, int offset) {
+        Vector3f p = vertex.getPosition();
+        target[offset] = p.x;
+        target[offset + 1] = p.y;
+        target[offset + 2] = p.z;
+        HalfEdge start = vertex.getHalfEdge();
+        if (start == null) {
+            return;
+        }
+
+        // Collect the one-ring: rotate forward (across prev(he).opposite) and, if a boundary is hit, backward
+        // (across he.opposite).
+        float sumX = 0, sumY = 0, sumZ = 0;
+        float sharpX = 0, sharpY = 0, sharpZ = 0;
+        int valence = 0;
+        int numberOfSharpEdges = 0;
+        boolean boundary = false;
+        HalfEdge he = start;
+        do {
+            Vector3f n = he.getEndVertex().getPosition();
+            sumX += n.x;
+            sumY += n.y;
+            sumZ += n.z;
+            valence++;
+            if (isSharp(he, cosCreaseAngle)) {
+                sharpX += n.x;
+                sharpY += n.y;
+                sharpZ += n.z;
+                numberOfSharpEdges++;
+            }
+            HalfEdge prev = he.getNext().getNext();
+            if (prev.getOpposite() == null) {
+                // Boundary edge (prev) closes the fan on this side.
+                Vector3f b = prev.getStartVertex().getPosition();
+                sumX += b.x;
+                sumY += b.y;
+                sumZ += b.z;
+                sharpX += b.x;
+                sharpY += b.y;
+                sharpZ += b.z;
+                valence++;
+                numberOfSharpEdges++;
+                boundary = true;
+                break;
+            }
+            he = prev.getOpposite();
+        } while (he != start);
+        if (boundary) {
+            he = start;
+            while (he.getOpposite() != null) {
+                he = he.getOpposite().getNext();
+                Vector3f n = he.getEndVertex().getPosition();
+                sumX += n.x;
+                sumY += n.y;
+                sumZ += n.z;
+                valence++;
+                if (isSharp(he, cosCreaseAngle)) {
+                    sharpX += n.x;
+                    sharpY += n.y;
+                    sharpZ += n.z;
+                    numberOfSharpEdges++;
+                }
+            }
+        }
+
+        if (numberOfSharpEdges == 2) {
+            // Crease/boundary curve rule
+            target[offset] = 0.75f * p.x + 0.125f * sharpX;
+            target[offset + 1] = 0.75f * p.y + 0.125f * sharpY;
+            target[offset + 2] = 0.75f * p.z + 0.125f * sharpZ;
+        } else if (numberOfSharpEdges < 2) {
+            // Smooth vertex (Loop's weights)
+            double a = 0.375 + 0.25 * Math.cos(2.0 * Math.PI / valence);
+            float beta = (float) ((0.625 - a * a) / valence);
+            float self = 1.0f - valence * beta;
+            target[offset] = self * p.x + beta * sumX;
+            target[offset + 1] = self * p.y + beta * sumY;
+            target[offset + 2] = self * p.z + beta * sumZ;
+        }
+        // Otherwise: corner vertex, keep position
+    }
+
+    /**
+     * Compute the position of the vertex created on the old half edge he and write it to target[offset..offset+2].
+     */
+    private void computeOddPosition(HalfEdge he, float cosCreaseAngle, float[] target, int offset) {
+        Vector3f a = he.getStartVertex().getPosition();
+        Vector3f b = he.getEndVertex().getPosition();
+        if (isSharp(he, cosCreaseAngle)) {
+            target[offset] = 0.5f * (a.x + b.x);
+            target[offset + 1] = 0.5f * (a.y + b.y);
+            target[offset + 2] = 0.5f * (a.z + b.z);
+        } else {
+            Vector3f c = he.getNext().getNext().getStartVertex().getPosition();
+            Vector3f d = he.getOpposite().getNext().getNext().getStartVertex().getPosition();
+            target[offset] = 0.375f * (a.x + b.x) + 0.125f * (c.x + d.x);
+            target[offset + 1] = 0.375f * (a.y + b.y) + 0.125f * (c.y + d.y);
+            target[offset + 2] = 0.375f * (a.z + b.z) + 0.125f * (c.z + d.z);
+        }
+    }
+
+    /**
+     * Returns true if the edge is a boundary edge or a crease.
+     */
+    private boolean isSharp(HalfEdge he, float cosCreaseAngle) {
+        if (he.getOpposite() == null) {
+            return true;
+        }
+        Vector3f n1 = he.getFacet().getNormal();
+        Vector3f n2 = he.getOpposite().getFacet().getNormal();
+        return n1.dot(n2) < cosCreaseAngle;
+    }
+}
@@ -0,0 +1,540 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.a3.halfedge;
+
+import com.jme3.math.ColorRGBA;
+import com.jme3.math.Vector3f;
+import wpcg.base.Logger;
+import wpcg.base.mesh.TriangleMesh;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Mesh decimation by edge collapses ordered by quadric error metrics (Garland and Heckbert).
+ * <p>
+ * Each vertex accumulates the quadric of the planes of its adjacent facets (boundary edges additionally get a
+ * perpendicular penalty plane). All edges are kept in a binary heap ordered by the error of collapsing them into
+ * the optimal position. Heap entries are invalidated lazily: each entry remembers the versions of its vertices and
+ * is discarded when popped after one of them changed. Collapses which would change the topology (link condition)
+ * or flip a facet are rejected.
+ */
+public class QuadricDecimation {
+
+    /**
+     * Weight of the penalty planes along boundary edges, keeps the boundary in place.
+     */
+    private static final double BOUNDARY_WEIGHT = 1000;
+
+    /**
+     * The mesh which is decimated (not modified).
+     */
+    private final HalfEdgeTriangleMesh mesh;
+
+    /**
+     * Working copy of the vertex positions, 3 per vertex.
+     */
+    private double[] positions;
+
+    /**
+     * Working copy of the triangles, 3 vertex indices per triangle.
+     */
+    private int[] triangles;
+
+    /**
+     * Triangles which were removed by a collapse are no longer alive.
+     */
+    private boolean[] triangleAlive;
+
+    /**
+     * Indices of the triangles adjacent to each vertex (may contain removed triangles).
+     */
+    private int[][] vertexTriangles;
+
+    /**
+     * Quadric of each vertex, 10 coefficients of the symmetric 4x4 matrix per vertex.
+     */
+    private double[] quadrics;
+
+    /**
+     * Version of each vertex, incremented on every change of the vertex. -1 for removed vertices.
+     */
+    private int[] versions;
+
+    /**
+     * True for vertices at the boundary of the mesh.
+     */
+    private boolean[] boundary;
+
+    /**
+     * Marker array for neighborhood tests, stamps avoid clearing it.
+     */
+    private int[] marks;
+    private int stamp;
+
+    /**
+     * Collapse candidates.
+     */
+    private PriorityQueue<Collapse> heap;
+
+    /**
+     * Number of triangles which are still alive.
+     */
+    private int numberOfTriangles;
+
+    /**
+     * Candidate edge collapse: collapse v1 into v0 which is moved to (x, y, z).
+     */
+    private static class Collapse implements Comparable<Collapse> {
+        final double error;
+        final int v0, v1;
+        final int version0, version1;
+        final double x, y, z;
+
+        Collapse(double error, int v0, int v1, int version0, int version1, double x, double y, double z) {
+            this.error = error;
+            this.v0 = v0;
+            this.v1 = v1;
+            this.version0 = version0;
+            this.version1 = version1;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        @Override
+        public int compareTo(Collapse other) {
+            return Double.compare(error, other.error);
+        }
+    }
+
+    public QuadricDecimation(HalfEdgeTriangleMesh mesh) {
+        this.mesh = mesh;
+    }
+
+    /**
+     * Decimate the mesh until it has at most targetNumberOfTriangles triangles (or no valid collapse is left).
+     */
+    public TriangleMesh decimateToTriangleCount(int targetNumberOfTriangles) {
+        return decimate(targetNumberOfTriangles, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Decimate the mesh as long as the quadric error of the cheapest collapse is below maxError.
+     */
+    public TriangleMesh decimateToError(double maxError) {
+        return decimate(0, maxError);
+    }
+
+    /**
+     * Decimate the mesh until it has at most targetNumberOfTriangles triangles or the cheapest collapse exceeds
+     * maxError. Returns the decimated mesh.
+     */
+    public TriangleMesh decimate(int targetNumberOfTriangles, double maxError) {
+        setup();
+        while (numberOfTriangles > targetNumberOfTriangles && !heap.isEmpty()) {
+            Collapse collapse = heap.poll();
+            if (collapse.error > maxError) {
+                break;
+            }
+            if (versions[collapse.v0] != collapse.version0 || versions[collapse.v1] != collapse.version1) {
+                // Outdated entry
+                continue;
+            }
+            if (isValid(collapse)) {
+                apply(collapse);
+            }
+        }
+        HalfEdgeTriangleMesh result = createResult();
+        Logger.getInstance().debug("Decimated mesh from " + mesh.getNumberOfTriangles() + " to "
+                + result.getNumberOfTriangles() + " triangles.");
+        return result.toMesh();
+    }
+
+    /**
+     * Create the working copy of the mesh, the quadrics and the initial collapse candidates.
+     */
+    private void setup() {
+        int n = mesh.getNumberOfVertices();
+        int m = mesh.getNumberOfTriangles();
+        positions = new double[3 * n];
+        for (int i = 0; i < n; i++) {
+            Vector3f p = mesh.getVertex(i).getPosition();
+            positions[3 * i] = p.x;
+            positions[3 * i + 1] = p.y;
+            positions[3 * i + 2] = p.z;
+        }
+        triangles = new int[3 * m];
+        triangleAlive = new boolean[m];
+        int[] count = new int[n];
+        for (int t = 0; t < m; t++) {
+            HalfEdge he = mesh.getTriangle(t).getHalfEdge();
+            for (int k = 0; k < 3; k++) {
+                triangles[3 * t + k] = he.getStartVertex().getIndex();
+                count[he.getStartVertex().getIndex()]++;
+                he = he.getNext();
+            }
+            triangleAlive[t] = true;
+        }
+        numberOfTriangles = m;
+        vertexTriangles = new int[n][];
+        for (int i = 0; i < n; i++) {
+            vertexTriangles[i] = new int[count[i]];
+            count[i] = 0;
+        }
+        for (int t = 0; t < m; t++) {
+            for (int k = 0; k < 3; k++) {
+                int v = triangles[3 * t + k];
+                vertexTriangles[v][count[v]++] = t;
+            }
+        }
+        versions = new int[n];
+        boundary = new boolean[n];
+        marks = new int[n];
+        stamp = 0;
+
+        // Quadrics: facet planes (area weighted) and boundary penalty planes
+        quadrics = new double[10 * n];
+        for (int t = 0; t < m; t++) {
+            double[] plane = getPlane(triangles[3 * t], triangles[3 * t + 1], triangles[3 * t + 2]);
+            for (int k = 0; k < 3; k++) {
+                addPlane(triangles[3 * t + k], plane, plane[4]);
+            }
+        }
+        for (int i = 0; i < mesh.getNumberOfHalfEdges(); i++) {
+            HalfEdge he = mesh.getHalfEdge(i);
+            if (he.getOpposite() == null) {
+                int a = he.getStartVertex().getIndex();
+                int b = he.getEndVertex().getIndex();
+                boundary[a] = true;
+                boundary[b] = true;
+                addBoundaryPlane(he, a, b);
+            }
+        }
+
+        // Candidates: one per edge
+        heap = new PriorityQueue<>(mesh.getNumberOfHalfEdges() / 2 + 1);
+        for (int i = 0; i < mesh.getNumberOfHalfEdges(); i++) {
+            HalfEdge he = mesh.getHalfEdge(i);
+            int a = he.getStartVertex().getIndex();
+            int b = he.getEndVertex().getIndex();
+            if (he.getOpposite() == null || a < b) {
+                heap.add(createCollapse(a, b));
+            }
+        }
+    }
+
+    /**
+     * Plane of the triangle (a, b, c): normal (0..2), offset (3) and area (4) as weight.
+     */
+    private double[] getPlane(int a, int b, int c) {
+        double ux = positions[3 * b] - positions[3 * a];
+        double uy = positions[3 * b + 1] - positions[3 * a + 1];
+        double uz = positions[3 * b + 2] - positions[3 * a + 2];
+        double vx = positions[3 * c] - positions[3 * a];
+        double vy = positions[3 * c + 1] - positions[3 * a + 1];
+        double vz = positions[3 * c + 2] - positions[3 * a + 2];
+        double nx = uy * vz - uz * vy;
+        double ny = uz * vx - ux * vz;
+        double nz = ux * vy - uy * vx;
+        double norm = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (norm < 1e-20) {
+            return new double[]{0, 0, 0, 0, 0};
+        }
+        nx /= norm;
+        ny /= norm;
+        nz /= norm;
+        double d = -(nx * positions[3 * a] + ny * positions[3 * a + 1] + nz * positions[3 * a + 2]);
+        return new double[]{nx, ny, nz, d, norm / 2};
+    }
+
+    /**
+     * Add a plane perpendicular to the facet through the boundary edge (a, b) to the quadrics of a and b. The
+     * facet normal is computed from the working positions (the stored facet normals may be outdated).
+     */
+    private void addBoundaryPlane(HalfEdge he, int a, int b) {
+        double[] facetPlane = getPlane(a, b, he.getNext().getEndVertex().getIndex());
+        double nx = facetPlane[0], ny = facetPlane[1], nz = facetPlane[2];
+        double ex = positions[3 * b] - positions[3 * a];
+        double ey = positions[3 * b + 1] - positions[3 * a + 1];
+        double ez = positions[3 * b + 2] - positions[3 * a + 2];
+        double px = ey * nz - ez * ny;
+        double py = ez * nx - ex * nz;
+        double pz = ex * ny - ey * nx;
+        double norm = Math.sqrt(px * px + py * py + pz * pz);
+        if (norm < 1e-20) {
+            return;
+        }
+        px /= norm;
+        py /= norm;
+        pz /= norm;
+        double d = -(px * positions[3 * a] + py * positions[3 * a + 1] + pz * positions[3 * a + 2]);
+        double[] plane = {px, py, pz, d};
+        double weight = BOUNDARY_WEIGHT * (ex * ex + ey * ey + ez * ez);
+        addPlane(a, plane, weight);
+        addPlane(b, plane, weight);
+    }
+
+    /**
+     * Add the weighted quadric of the plane (a, b, c, d) to the quadric of the vertex.
+     */
+    private void addPlane(int vertex, double[] plane, double weight) {
+        double a = plane[0], b = plane[1], c = plane[2], d = plane[3];
+        int o = 10 * vertex;
+        quadrics[o] += weight * a * a;
+        quadrics[o + 1] += weight * a * b;
+        quadrics[o + 2] += weight * a * c;
+        quadrics[o + 3] += weight * a * d;
+        quadrics[o + 4] += weight * b * b;
+        quadrics[o + 5] += weight * b * c;
+        quadrics[o + 6] += weight * b * d;
+        quadrics[o + 7] += weight * c * c;
+        quadrics[o + 8] += weight * c * d;
+        quadrics[o + 9] += weight * d * d;
+    }
+
+    /**
+     * Create the collapse candidate for the edge (v0, v1) at the position with minimal error.
+     */
+    private Collapse createCollapse(int v0, int v1) {
+        double[] q = new double[10];
+        for (int i = 0; i < 10; i++) {
+            q[i] = quadrics[10 * v0 + i] + quadrics[10 * v1 + i];
+        }
+        // Optimal position: solve the 3x3 system (Cramer's rule)
+        double det = q[0] * (q[4] * q[7] - q[5] * q[5]) - q[1] * (q[1] * q[7] - q[5] * q[2])
+                + q[2] * (q[1] * q[5] - q[4] * q[2]);
+        double x, y, z;
+        if (Math.abs(det) > 1e-12) {
+            double bx = -q[3], by = -q[6], bz = -q[8];
+            x = (bx * (q[4] * q[7] - q[5] * q[5]) - q[1] * (by * q[7] - q[5] * bz)
+                    + q[2] * (by * q[5] - q[4] * bz)) / det;
+            y = (q[0] * (by * q[7] - q[5] * bz) - bx * (q[1] * q[7] - q[5] * q[2])
+                    + q[2] * (q[1] * bz - by * q[2])) / det;
+            z = (q[0] * (q[4] * bz - by * q[5]) - q[1] * (q[1] * bz - by * q[2])
+                    + bx * (q[1] * q[5] - q[4] * q[2])) / det;
+        } else {
+            // Singular: best of the end points and the midpoint
+            double bestError = Double.POSITIVE_INFINITY;
+            x = y = z = 0;
+            for (double alpha : new double[]{0, 0.5, 1}) {
+                double cx = (1 - alpha) * positions[3 * v0] + alpha * positions[3 * v1];
+                double cy = (1 - alpha) * positions[3 * v0 + 1] + alpha * positions[3 * v1 + 1];
+                double cz = (1 - alpha) * positions[3 * v0 + 2] + alpha * positions[3 * v1 + 2];
+                double error = evaluate(q, cx, cy, cz);
+                if (error < bestError) {
+                    bestError = error;
+                    x = cx;
+                    y = cy;
+                    z = cz;
+                }
+            }
+        }
+        return new Collapse(Math.max(0, evaluate(q, x, y, z)), v0, v1, versions[v0], versions[v1], x, y, z);
+    }
+
+    /**
+     * Evaluate the quadric at (x, y, z).
+     */
+    private static double evaluate(double[] q, double x, double y, double z) {
+        return q[0] * x * x + 2 * q[1] * x * y + 2 * q[2] * x * z + 2 * q[3] * x
+                + q[4] * y * y + 2 * q[5] * y * z + 2 * q[6] * y
+                + q[7] * z * z + 2 * q[8] * z + q[9];
+    }
+
+    /**
+     * Check the link condition and the facet orientations for the collapse.
+     */
+    private boolean isValid(Collapse collapse) {
+        int v0 = collapse.v0;
+        int v1 = collapse.v1;
+
+        // Link condition: the common neighbors of v0 and v1 must be exactly the opposite vertices of the edge.
+        stamp += 2;
+        int sharedTriangles = 0;
+        for (int t : vertexTriangles[v0]) {
+            if (!triangleAlive[t]) {
+                continue;
+            }
+            boolean containsV1 = false;
+            for (int k = 0; k < 3; k++) {
+                int w = triangles[3 * t + k];
+                marks[w] = stamp;
+                containsV1 |= w == v1;
+            }
+            if (containsV1) {
+                sharedTriangles++;
+            }
+        }
+        if (sharedTriangles == 0) {
+            return false;
+        }
+        int commonNeighbors = 0;
+        for (int t : vertexTriangles[v1]) {
+            if (!triangleAlive[t]) {
+                continue;
+            }
+            for (int k = 0; k < 3; k++) {
+                int w = triangles[3 * t + k];
+                if (w != v0 && w != v1 && marks[w] == stamp) {
+                    marks[w] = stamp + 1;
+                    commonNeighbors++;
+                }
+            }
+        }
+        if (commonNeighbors != sharedTriangles) {
+            return false;
+        }
+        // An inner edge between two boundary vertices would pinch the surface.
+        if (sharedTriangles == 2 && boundary[v0] && boundary[v1]) {
+            return false;
+        }
+
+        // Facets must not flip.
+        return !flips(v0, v1, collapse) && !flips(v1, v0, collapse);
+    }
+
+    /**
+     * Returns true if one of the triangles of v (not containing other) flips or degenerates when v is moved to
+     * the collapse position.
+     */
+    private boolean flips(int v, int other, Collapse collapse) {
+        for (int t : vertexTriangles[v]) {
+            if (!triangleAlive[t]) {
+                continue;
+            }
+            int a = triangles[3 * t], b = triangles[3 * t + 1], c = triangles[3 * t + 2];
+            if (a == other || b == other || c == other) {
+                continue;
+            }
+            double[] before = getNormal(a, b, c, -1, 0, 0, 0);
+            double[] after = getNormal(a, b, c, v, collapse.x, collapse.y, collapse.z);
+            double dot = before[0] * after[0] + before[1] * after[1] + before[2] * after[2];
+            double afterLength = Math.sqrt(after[0] * after[0] + after[1] * after[1] + after[2] * after[2]);
+            if (afterLength < 1e-20 || dot <= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Unnormalized normal of the triangle (a, b, c) where the vertex moved is placed at (x, y, z).
+     */
+    private double[] getNormal(int a, int b, int c, int moved, double x, double y, double z) {
+        double[] p = new double[9];
+        int[] corners = {a, b, c};
+        for (int k = 0; k < 3; k++) {
+            if (corners[k] == moved) {
+                p[3 * k] = x;
+                p[3 * k + 1] = y;
+                p[3 * k + 2] = z;
+            } else {
+                p[3 * k] = positions[3 * corners[k]];
+                p[3 * k + 1] = positions[3 * corners[k] + 1];
+                p[3 * k + 2] = positions[3 * corners[k] + 2];
+            }
+        }
+        double ux = p[3] - p[0], uy = p[4] - p[1], uz = p[5] - p[2];
+        double vx = p[6] - p[0], vy = p[7] - p[1], vz = p[8] - p[2];
+        return new double[]{uy * vz - uz * vy, uz * vx - ux * vz, ux * vy - uy * vx};
+    }
+
+    /**
+     * Collapse v1 into v0: move v0, remove the triangles on the edge, reconnect the triangles of v1 to v0 and
+     * create new candidates for the edges around v0.
+     */
+    private void apply(Collapse collapse) {
+        int v0 = collapse.v0;
+        int v1 = collapse.v1;
+        positions[3 * v0] = collapse.x;
+        positions[3 * v0 + 1] = collapse.y;
+        positions[3 * v0 + 2] = collapse.z;
+        for (int i = 0; i < 10; i++) {
+            quadrics[10 * v0 + i] += quadrics[10 * v1 + i];
+        }
+        boundary[v0] |= boundary[v1];
+
+        // New triangle list of v0: alive triangles of v0 and v1 without the ones on the edge
+        int[] merged = new int[vertexTriangles[v0].length + vertexTriangles[v1].length];
+        int count = 0;
+        for (int t : vertexTriangles[v0]) {
+            if (!triangleAlive[t]) {
+                continue;
+            }
+            if (contains(t, v1)) {
+                triangleAlive[t] = false;
+                numberOfTriangles--;
+            } else {
+                merged[count++] = t;
+            }
+        }
+        for (int t : vertexTriangles[v1]) {
+            if (!triangleAlive[t]) {
+                continue;
+            }
+            for (int k = 0; k < 3; k++) {
+                if (triangles[3 * t + k] == v1) {
+                    triangles[3 * t + k] = v0;
+                }
+            }
+            merged[count++] = t;
+        }
+        vertexTriangles[v0] = Arrays.copyOf(merged, count);
+        vertexTriangles[v1] = new int[0];
+        versions[v0]++;
+        versions[v1] = -1;
+
+        // New candidates for all edges at v0
+        stamp += 2;
+        marks[v0] = stamp;
+        for (int t : vertexTriangles[v0]) {
+            for (int k = 0; k < 3; k++) {
+                int w = triangles[3 * t + k];
+                if (marks[w] != stamp) {
+                    marks[w] = stamp;
+                    heap.add(createCollapse(v0, w));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if the triangle t contains the vertex v.
+     */
+    private boolean contains(int t, int v) {
+        return triangles[3 * t] == v || triangles[3 * t + 1] == v || triangles[3 * t + 2] == v;
+    }
+
+    /**
+     * Create a half edge mesh from the remaining triangles (only vertices which are still in use).
+     */
+    private HalfEdgeTriangleMesh createResult() {
+        HalfEdgeTriangleMesh result = new HalfEdgeTriangleMesh();
+        int[] vertexMap = new int[versions.length];
+        Arrays.fill(vertexMap, -1);
+        for (int t = 0; t < triangleAlive.length; t++) {
+            if (!triangleAlive[t]) {
+                continue;
+            }
+            int[] corners = new int[3];
+            for (int k = 0; k < 3; k++) {
+                int v = triangles[3 * t + k];
+                if (vertexMap[v] < 0) {
+                    vertexMap[v] = result.addVertex(new Vector3f((float) positions[3 * v],
+                            (float) positions[3 * v + 1], (float) positions[3 * v + 2]));
+                }
+                corners[k] = vertexMap[v];
+            }
+            int index = result.addTriangle(corners[0], corners[1], corners[2]);
+            ColorRGBA color = mesh.getTriangle(t).getColor();
+            result.getTriangle(index).setColor(color);
+        }
+        result.connectHalfEdges();
+        result.computeTriangleNormals();
+        return result;
+    }
+}
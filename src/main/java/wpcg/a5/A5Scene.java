@@ -19,9 +19,12 @@ import com.jme3.scene.Node;
 import com.jme3.scene.shape.Box;
 import com.jme3.scene.shape.Sphere;
 import com.jme3.shader.VarType;
+import wpcg.a5.kdtree.KDTreeBuilder;
 import wpcg.a5.kdtree.KDTreeData;
 import wpcg.a5.kdtree.KDTreeNode;
-import wpcg.a5.kdtree.NearestNeighborSearch;
+import wpcg.a5.kdtree.NearestNeighborResult;
+import wpcg.a5.kdtree.SpatialIndex;
+import wpcg.a5.kdtree.SpatialIndexSelector;
 import wpcg.base.CameraController;
 import wpcg.base.Scene;
 
@@ -76,7 +79,12 @@ public class A5Scene extends Scene {
     /**
      * The nearest neigbor search
      */
-    protected NearestNeighborSearch<Geometry> nearestNeighborSearch;
+    protected SpatialIndex<Geometry> nearestNeighborSearch;
+
+    /**
+     * Result of the nearest neighbor search, reused in each frame.
+     */
+    private NearestNeighborResult<Geometry> nearestNeighborResult;
 
     /**
      * Current closest data point to the movingPoint.
@@ -103,7 +111,27 @@ public class A5Scene extends Scene {
      */
     private static int NUM_POINTS = 10000;
 
+    /**
+     * Default number of expected queries: the moving point queries once per frame, about one minute at 60 frames
+     * per second. Build time then still matters next to the query time.
+     */
+    private static final int DEFAULT_EXPECTED_QUERIES = 60 * 60;
+
+    /**
+     * Number of nearest neighbor queries the index is selected for.
+     */
+    private final int expectedQueries;
+
     public A5Scene() {
+        this(DEFAULT_EXPECTED_QUERIES);
+    }
+
+    /**
+     * The spatial index is selected for the given number of nearest neighbor queries (one per frame), e.g. the
+     * frame rate times the expected run time in seconds.
+     */
+    public A5Scene(int expectedQueries) {
+        this.expectedQueries = expectedQueries;
         this.cameraController = null;
         this.rootNode = null;
         this.kdTree = null;
@@ -113,6 +141,7 @@ public class A5Scene extends Scene {
         this.movingPointAngle = 0;
         this.cacheQuaternion = new Quaternion();
         this.closestNode = null;
+        this.nearestNeighborResult = new NearestNeighborResult<>();
 
     }
 
@@ -127,10 +156,11 @@ public class A5Scene extends Scene {
         // Generate test data
         points = makeRandomPoints(NUM_POINTS);
 
-        // TODO: Build kd-tree
+        // Build kd-tree (reused as kd tree candidate of the index selection)
+        kdTree = new KDTreeBuilder<Geometry>().build(points);
 
-        // Setup nearest neighbor search
-        this.nearestNeighborSearch = new NearestNeighborSearch(kdTree, points);
+        // Setup nearest neighbor search: fastest index (kd tree, grid or hash) for the distribution of the points
+        this.nearestNeighborSearch = SpatialIndexSelector.select(kdTree, points, expectedQueries);
 
         // Draw hyperplanes (do not call with more than 100 data points)
         //addHyperplanesToSceneGraph(kdTree);
@@ -230,12 +260,12 @@ public class A5Scene extends Scene {
 
         // Update the nearest node
         Vector3f pos3D = movingPoint.getLocalTranslation();
-        KDTreeData<Geometry> n = nearestNeighborSearch.getNearestNeighbor(new Vector2f(pos3D.x, pos3D.z));
+        nearestNeighborSearch.getNearestNeighbor(pos3D.x, pos3D.z, nearestNeighborResult);
         if (closestNode != null) {
             closestNode.getMaterial().setColor("Diffuse", DEFAULT_POINT_COLOR);
         }
-        if (n != null) {
-            closestNode = n.getData();
+        if (nearestNeighborResult.isFound()) {
+            closestNode = nearestNeighborResult.getData().getData();
             closestNode.getMaterial().setColor("Diffuse", CLOSEST_POINT_COLOR);
         }
     }
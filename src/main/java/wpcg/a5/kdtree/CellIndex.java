@@ -0,0 +1,336 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.a5.kdtree;
+
+import com.jme3.math.Vector2f;
+
+import java.util.List;
+
+/**
+ * Base of the point indices over square cells (uniform grid, spatial hash). Each cell is mapped to a bucket, the
+ * points are sorted by bucket with a counting sort in two linear passes (count, prefix sum, scatter): the points
+ * of bucket b are at the positions bucketOffsets[b]..bucketOffsets[b + 1] - 1 of flat coordinate arrays (CSR).
+ * <p>
+ * The nearest neighbor search visits the cells in rings around the cell of the query position and stops as soon
+ * as the best point is closer than everything outside the visited block of cells. Queries in large empty regions
+ * switch to a linear scan once more cells than points were visited, so a query never costs more than O(n).
+ * Radius and range queries covering more cells than there are buckets scan all points as well.
+ */
+abstract class CellIndex<T> implements SpatialIndex<T> {
+
+    /**
+     * Average number of points per cell for the default cell size.
+     */
+    static final float POINTS_PER_CELL = 2;
+
+    /**
+     * The data points, indexed by the index array.
+     */
+    private final List<KDTreeData<T>> points;
+
+    /**
+     * Lower left corner of cell (0, 0), the lower left corner of the bounding box of the points.
+     */
+    private final float originX;
+    private final float originY;
+
+    /**
+     * Side length of the cells.
+     */
+    private final float cellSize;
+    private final float inverseCellSize;
+
+    /**
+     * Number of cells covering the bounding box of the points in x and y direction.
+     */
+    protected final int numberOfCellsX;
+    protected final int numberOfCellsY;
+
+    /**
+     * Number of buckets.
+     */
+    protected final int numberOfBuckets;
+
+    /**
+     * First position of each bucket (plus the end of the last bucket).
+     */
+    private final int[] bucketOffsets;
+
+    /**
+     * Coordinates and point index (in the list of points) of the points sorted by bucket.
+     */
+    private final float[] xs;
+    private final float[] ys;
+    private final int[] indices;
+
+    /**
+     * Build the index over the points, cellSize <= 0 selects a cell size with about POINTS_PER_CELL points per
+     * cell for uniformly distributed points.
+     */
+    protected CellIndex(List<KDTreeData<T>> points, float cellSize) {
+        this.points = points;
+        int n = points.size();
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for (KDTreeData<T> point : points) {
+            Vector2f p = point.getP();
+            minX = Math.min(minX, p.x);
+            minY = Math.min(minY, p.y);
+            maxX = Math.max(maxX, p.x);
+            maxY = Math.max(maxY, p.y);
+        }
+        if (n == 0) {
+            minX = minY = maxX = maxY = 0;
+        }
+        float width = maxX - minX;
+        float height = maxY - minY;
+        if (cellSize <= 0) {
+            cellSize = width * height > 0 ? (float) Math.sqrt(width * height * POINTS_PER_CELL / n)
+                    : Math.max(width, height) * POINTS_PER_CELL / Math.max(n, 1);
+        }
+        if (!(cellSize > 0)) {
+            cellSize = 1;
+        }
+        this.originX = minX;
+        this.originY = minY;
+        this.cellSize = cellSize;
+        this.inverseCellSize = 1.0f / cellSize;
+        this.numberOfCellsX = (int) Math.min(Integer.MAX_VALUE / 2, (long) (width * inverseCellSize) + 1);
+        this.numberOfCellsY = (int) Math.min(Integer.MAX_VALUE / 2, (long) (height * inverseCellSize) + 1);
+        this.numberOfBuckets = getNumberOfBuckets(n);
+
+        // Counting sort by bucket
+        int[] pointBuckets = new int[n];
+        this.bucketOffsets = new int[numberOfBuckets + 1];
+        for (int i = 0; i < n; i++) {
+            Vector2f p = points.get(i).getP();
+            pointBuckets[i] = getBucket(clamp(getCellX(p.x), numberOfCellsX), clamp(getCellY(p.y), numberOfCellsY));
+            bucketOffsets[pointBuckets[i] + 1]++;
+        }
+        for (int b = 0; b < numberOfBuckets; b++) {
+            bucketOffsets[b + 1] += bucketOffsets[b];
+        }
+        xs = new float[n];
+        ys = new float[n];
+        indices = new int[n];
+        int[] next = new int[numberOfBuckets];
+        System.arraycopy(bucketOffsets, 0, next, 0, numberOfBuckets);
+        for (int i = 0; i < n; i++) {
+            int position = next[pointBuckets[i]]++;
+            Vector2f p = points.get(i).getP();
+            xs[position] = p.x;
+            ys[position] = p.y;
+            indices[position] = i;
+        }
+    }
+
+    /**
+     * Number of buckets for n points. Called from the constructor after the cell counts are set.
+     */
+    protected abstract int getNumberOfBuckets(int n);
+
+    /**
+     * Bucket of the cell (cx, cy), 0 <= cx < numberOfCellsX, 0 <= cy < numberOfCellsY.
+     */
+    protected abstract int getBucket(int cx, int cy);
+
+    /**
+     * Returns true if the bucket of the cell only holds points of that cell (no hash collisions), so the points
+     * need no cell test in the radius and range queries.
+     */
+    protected abstract boolean isBucketExclusive();
+
+    @Override
+    public boolean getNearestNeighbor(float x, float y, NearestNeighborResult<T> result) {
+        result.clear();
+        if (xs.length == 0) {
+            return false;
+        }
+        int cx = clamp(getCellX(x), numberOfCellsX);
+        int cy = clamp(getCellY(y), numberOfCellsY);
+        long best = ImplicitKDTree.pack(Float.POSITIVE_INFINITY, -1);
+        int tested = 0;
+        long visitedCells = 0;
+        for (int ring = 0; ; ring++) {
+            int x0 = cx - ring;
+            int x1 = cx + ring;
+            int y0 = cy - ring;
+            int y1 = cy + ring;
+            // Cells of the ring inside the grid: first and last row, first and last column in between
+            for (int j = Math.max(y0, 0); j <= Math.min(y1, numberOfCellsY - 1); j++) {
+                boolean fullRow = j == y0 || j == y1;
+                int from = fullRow ? Math.max(x0, 0) : (x0 >= 0 ? x0 : x1);
+                int to = fullRow ? Math.min(x1, numberOfCellsX - 1) : (x1 < numberOfCellsX ? x1 : x0);
+                int step = fullRow ? 1 : x1 - x0;
+                if (from > to) {
+                    // Both columns outside the grid: skip the other middle rows
+                    j = y1 - 1;
+                    continue;
+                }
+                for (int i = from; i <= to; i += step) {
+                    int bucket = getBucket(i, j);
+                    int end = bucketOffsets[bucket + 1];
+                    for (int position = bucketOffsets[bucket]; position < end; position++) {
+                        float dx = xs[position] - x;
+                        float dy = ys[position] - y;
+                        float sqrDist = dx * dx + dy * dy;
+                        if (sqrDist < ImplicitKDTree.getSqrDistance(best)) {
+                            best = ImplicitKDTree.pack(sqrDist, position);
+                        }
+                    }
+                    tested += end - bucketOffsets[bucket];
+                    visitedCells++;
+                }
+            }
+            // Distance to the cells outside the visited block (no cells beyond the border of the grid)
+            float bound = Float.POSITIVE_INFINITY;
+            if (x0 > 0) {
+                bound = Math.min(bound, x - (originX + x0 * cellSize));
+            }
+            if (x1 < numberOfCellsX - 1) {
+                bound = Math.min(bound, originX + (x1 + 1) * cellSize - x);
+            }
+            if (y0 > 0) {
+                bound = Math.min(bound, y - (originY + y0 * cellSize));
+            }
+            if (y1 < numberOfCellsY - 1) {
+                bound = Math.min(bound, originY + (y1 + 1) * cellSize - y);
+            }
+            if (bound == Float.POSITIVE_INFINITY || bound * bound >= ImplicitKDTree.getSqrDistance(best)) {
+                break;
+            }
+            if (visitedCells > xs.length) {
+                for (int position = 0; position < xs.length; position++) {
+                    float dx = xs[position] - x;
+                    float dy = ys[position] - y;
+                    float sqrDist = dx * dx + dy * dy;
+                    if (sqrDist < ImplicitKDTree.getSqrDistance(best)) {
+                        best = ImplicitKDTree.pack(sqrDist, position);
+                    }
+                }
+                tested += xs.length;
+                break;
+            }
+        }
+        int position = (int) best;
+        result.set(indices[position], ImplicitKDTree.getSqrDistance(best), points.get(indices[position]), tested);
+        return true;
+    }
+
+    @Override
+    public int withinRadius(Vector2f p, float radius, int[] indices) {
+        float sqrRadius = radius * radius;
+        int count = 0;
+        int cx0 = clamp(getCellX(p.x - radius), numberOfCellsX);
+        int cx1 = clamp(getCellX(p.x + radius), numberOfCellsX);
+        int cy0 = clamp(getCellY(p.y - radius), numberOfCellsY);
+        int cy1 = clamp(getCellY(p.y + radius), numberOfCellsY);
+        if (isLargerThanBuckets(cx0, cx1, cy0, cy1)) {
+            for (int position = 0; position < xs.length; position++) {
+                float dx = xs[position] - p.x;
+                float dy = ys[position] - p.y;
+                if (dx * dx + dy * dy <= sqrRadius) {
+                    count = add(indices, count, this.indices[position]);
+                }
+            }
+            return count;
+        }
+        for (int j = cy0; j <= cy1; j++) {
+            for (int i = cx0; i <= cx1; i++) {
+                int bucket = getBucket(i, j);
+                for (int position = bucketOffsets[bucket]; position < bucketOffsets[bucket + 1]; position++) {
+                    float dx = xs[position] - p.x;
+                    float dy = ys[position] - p.y;
+                    if (dx * dx + dy * dy <= sqrRadius && isInCell(position, i, j)) {
+                        count = add(indices, count, this.indices[position]);
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int range(Vector2f ll, Vector2f ur, int[] indices) {
+        int count = 0;
+        int cx0 = clamp(getCellX(ll.x), numberOfCellsX);
+        int cx1 = clamp(getCellX(ur.x), numberOfCellsX);
+        int cy0 = clamp(getCellY(ll.y), numberOfCellsY);
+        int cy1 = clamp(getCellY(ur.y), numberOfCellsY);
+        if (isLargerThanBuckets(cx0, cx1, cy0, cy1)) {
+            for (int position = 0; position < xs.length; position++) {
+                float x = xs[position];
+                float y = ys[position];
+                if (x >= ll.x && x <= ur.x && y >= ll.y && y <= ur.y) {
+                    count = add(indices, count, this.indices[position]);
+                }
+            }
+            return count;
+        }
+        for (int j = cy0; j <= cy1; j++) {
+            for (int i = cx0; i <= cx1; i++) {
+                int bucket = getBucket(i, j);
+                for (int position = bucketOffsets[bucket]; position < bucketOffsets[bucket + 1]; position++) {
+                    float x = xs[position];
+                    float y = ys[position];
+                    if (x >= ll.x && x <= ur.x && y >= ll.y && y <= ur.y && isInCell(position, i, j)) {
+                        count = add(indices, count, this.indices[position]);
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns true if the block of cells cx0..cx1 x cy0..cy1 has more cells than there are buckets. Only possible
+     * for the spatial hash (at least as many buckets as points), where scanning all points is cheaper then.
+     */
+    private boolean isLargerThanBuckets(int cx0, int cx1, int cy0, int cy1) {
+        return (long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1) > numberOfBuckets;
+    }
+
+    /**
+     * Returns true if the point at the position belongs to the cell (cx, cy). Prevents duplicates if several
+     * visited cells share a bucket.
+     */
+    private boolean isInCell(int position, int cx, int cy) {
+        return isBucketExclusive() || (clamp(getCellX(xs[position]), numberOfCellsX) == cx
+                && clamp(getCellY(ys[position]), numberOfCellsY) == cy);
+    }
+
+    /**
+     * Write the index to the buffer if there is space, returns the new count.
+     */
+    private static int add(int[] indices, int count, int index) {
+        if (count < indices.length) {
+            indices[count] = index;
+        }
+        return count + 1;
+    }
+
+    private int getCellX(float x) {
+        return (int) Math.floor((x - originX) * inverseCellSize);
+    }
+
+    private int getCellY(float y) {
+        return (int) Math.floor((y - originY) * inverseCellSize);
+    }
+
+    private static int clamp(int cell, int numberOfCells) {
+        return Math.max(0, Math.min(numberOfCells - 1, cell));
+    }
+
+    // +++ GETTER/SETTER +++++++++++++++++++++++++
+
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    public int size() {
+        return xs.length;
+    }
+}
@@ -0,0 +1,301 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.a5.kdtree;
+
+import java.util.Arrays;
+
+/**
+ * Kd tree index with insertions, deletions and moves of points, without rebuilding everything on each update.
+ * <p>
+ * Logarithmic method (Bentley-Saxe): the points are stored in a forest of static implicit kd trees, level i holds
+ * at most 2^i points. An insertion merges the new point with all levels below the first empty level k into a
+ * new tree on level k, like incrementing a binary counter. Each point is rebuilt O(log n) times, so an insertion
+ * costs amortized O(log^2 n). Deletions only mark the point as deleted in its tree (tombstone); tombstones are
+ * dropped when their level is merged, and the whole forest is rebuilt once there are more tombstones than points.
+ * A nearest neighbor query searches all O(log n) trees.
+ * <p>
+ * Points are identified by the id returned from insert(), ids of removed points are reused.
+ */
+public class DynamicKDTree<T> {
+
+    /**
+     * One static tree of the forest.
+     */
+    private static class Level {
+        private final ImplicitKDTree<?> tree;
+
+        /**
+         * Point id for each position of the tree.
+         */
+        private final int[] ids;
+
+        /**
+         * Tombstones, indexed by position.
+         */
+        private final boolean[] deleted;
+
+        private int numberOfDeleted;
+
+        Level(ImplicitKDTree<?> tree, int[] ids) {
+            this.tree = tree;
+            this.ids = ids;
+            this.deleted = new boolean[ids.length];
+        }
+
+        int getNumberOfPoints() {
+            return ids.length - numberOfDeleted;
+        }
+    }
+
+    /**
+     * The forest, levels[i] is null or holds at most 2^i points.
+     */
+    private Level[] levels = new Level[1];
+
+    /**
+     * Current position of each point (by id).
+     */
+    private float[] xs = new float[16];
+    private float[] ys = new float[16];
+
+    /**
+     * Payload of each point (by id).
+     */
+    private Object[] data = new Object[16];
+
+    /**
+     * Level and position in the level of each point (by id), level -1 for unused ids.
+     */
+    private int[] pointLevels = new int[16];
+    private int[] pointPositions = new int[16];
+
+    /**
+     * Number of assigned ids (used or free).
+     */
+    private int numberOfIds;
+
+    /**
+     * Stack of the ids of removed points.
+     */
+    private int[] freeIds = new int[16];
+    private int numberOfFreeIds;
+
+    /**
+     * Number of points.
+     */
+    private int size;
+
+    /**
+     * Number of tombstones in all levels.
+     */
+    private int numberOfDeleted;
+
+    /**
+     * Insert a point, returns its id.
+     */
+    public int insert(float x, float y, T payload) {
+        int id = allocateId();
+        data[id] = payload;
+        insert(id, x, y);
+        size++;
+        return id;
+    }
+
+    /**
+     * Remove the point with the given id. Returns false if there is no such point.
+     */
+    public boolean remove(int id) {
+        if (!contains(id)) {
+            return false;
+        }
+        markDeleted(id);
+        data[id] = null;
+        pointLevels[id] = -1;
+        if (numberOfFreeIds == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, 2 * freeIds.length);
+        }
+        freeIds[numberOfFreeIds++] = id;
+        size--;
+        if (numberOfDeleted > size) {
+            rebuild();
+        }
+        return true;
+    }
+
+    /**
+     * Move the point with the given id to (x, y), the id stays the same. Returns false if there is no such point.
+     */
+    public boolean move(int id, float x, float y) {
+        if (!contains(id)) {
+            return false;
+        }
+        markDeleted(id);
+        insert(id, x, y);
+        if (numberOfDeleted > size) {
+            rebuild();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the id of the point closest to (x, y), -1 if the tree is empty.
+     */
+    public int getNearestNeighbor(float x, float y) {
+        float bestSqrDist = Float.POSITIVE_INFINITY;
+        int bestId = -1;
+        for (Level level : levels) {
+            if (level == null) {
+                continue;
+            }
+            int position = level.tree.getNearestNeighbor(x, y, level.numberOfDeleted > 0 ? level.deleted : null,
+                    bestSqrDist);
+            if (position >= 0) {
+                bestId = level.ids[position];
+                float dx = xs[bestId] - x;
+                float dy = ys[bestId] - y;
+                bestSqrDist = dx * dx + dy * dy;
+            }
+        }
+        return bestId;
+    }
+
+    /**
+     * Put the point (id) at (x, y) into the forest: merge it with all levels below the first empty level.
+     */
+    private void insert(int id, float x, float y) {
+        xs[id] = x;
+        ys[id] = y;
+        int k = 0;
+        int count = 1;
+        while (k < levels.length && levels[k] != null) {
+            count += levels[k].getNumberOfPoints();
+            k++;
+        }
+        if (k == levels.length) {
+            levels = Arrays.copyOf(levels, levels.length + 1);
+        }
+        int[] ids = new int[count];
+        int n = collect(0, k, ids, 0);
+        ids[n] = id;
+        build(k, ids);
+    }
+
+    /**
+     * Rebuild the forest without tombstones, all points in a single tree.
+     */
+    private void rebuild() {
+        int[] ids = new int[size];
+        collect(0, levels.length, ids, 0);
+        Arrays.fill(levels, null);
+        if (size == 0) {
+            numberOfDeleted = 0;
+            return;
+        }
+        int k = 32 - Integer.numberOfLeadingZeros(size - 1);
+        if (k >= levels.length) {
+            levels = Arrays.copyOf(levels, k + 1);
+        }
+        build(k, ids);
+    }
+
+    /**
+     * Write the ids of all points in the levels from..to-1 to ids (starting at offset), removes the levels and
+     * their tombstones. Returns the new offset.
+     */
+    private int collect(int from, int to, int[] ids, int offset) {
+        for (int k = from; k < to; k++) {
+            Level level = levels[k];
+            if (level == null) {
+                continue;
+            }
+            for (int position = 0; position < level.ids.length; position++) {
+                if (!level.deleted[position]) {
+                    ids[offset++] = level.ids[position];
+                }
+            }
+            numberOfDeleted -= level.numberOfDeleted;
+            levels[k] = null;
+        }
+        return offset;
+    }
+
+    /**
+     * Build the tree over the points (ids) for level k.
+     */
+    private void build(int k, int[] ids) {
+        float[] treeXs = new float[ids.length];
+        float[] treeYs = new float[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            treeXs[i] = xs[ids[i]];
+            treeYs[i] = ys[ids[i]];
+        }
+        ImplicitKDTree<?> tree = ImplicitKDTree.from(treeXs, treeYs);
+        int[] levelIds = new int[ids.length];
+        for (int position = 0; position < ids.length; position++) {
+            int id = ids[tree.getSourceIndex(position)];
+            levelIds[position] = id;
+            pointLevels[id] = k;
+            pointPositions[id] = position;
+        }
+        levels[k] = new Level(tree, levelIds);
+    }
+
+    /**
+     * Set the tombstone for the current entry of the point (id). Levels with only tombstones are removed.
+     */
+    private void markDeleted(int id) {
+        int k = pointLevels[id];
+        Level level = levels[k];
+        level.deleted[pointPositions[id]] = true;
+        level.numberOfDeleted++;
+        numberOfDeleted++;
+        if (level.getNumberOfPoints() == 0) {
+            numberOfDeleted -= level.numberOfDeleted;
+            levels[k] = null;
+        }
+    }
+
+    private int allocateId() {
+        if (numberOfFreeIds > 0) {
+            return freeIds[--numberOfFreeIds];
+        }
+        if (numberOfIds == xs.length) {
+            int capacity = 2 * xs.length;
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            data = Arrays.copyOf(data, capacity);
+            pointLevels = Arrays.copyOf(pointLevels, capacity);
+            pointPositions = Arrays.copyOf(pointPositions, capacity);
+        }
+        return numberOfIds++;
+    }
+
+    /**
+     * Returns true if the id belongs to a point in the tree.
+     */
+    public boolean contains(int id) {
+        return id >= 0 && id < numberOfIds && pointLevels[id] >= 0;
+    }
+
+    // +++ GETTER/SETTER +++++++++++++++++++++++++
+
+    public int size() {
+        return size;
+    }
+
+    public float getX(int id) {
+        return xs[id];
+    }
+
+    public float getY(int id) {
+        return ys[id];
+    }
+
+    @SuppressWarnings("unchecked")
+    public T getData(int id) {
+        return (T) data[id];
+    }
+}
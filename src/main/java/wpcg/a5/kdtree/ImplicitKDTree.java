@@ -0,0 +1,499 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.a5.kdtree;
+
+import com.jme3.math.Vector2f;
+import com.jme3.math.Vector3f;
+import wpcg.base.mesh.TriangleMesh;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+/**
+ * Kd tree without node objects over points of any dimension: the coordinates are stored in one flat array per
+ * axis, ordered such that the tree is implicit.
+ * <p>
+ * The subtree over the positions from..to-1 has its root (median) at mid = (from + to) / 2, the negative subtree
+ * covers from..mid-1 and the positive subtree mid+1..to-1. Each subtree is split along the axis with the largest
+ * spread of its points, which adapts to anisotropic data (e.g. flat 3D scenes); the axis is stored per position.
+ * A payload array and the index of each point in the source list are stored in the same order. Queries only walk
+ * index ranges of contiguous arrays, there is no pointer chasing. 2D and 3D queries use specialized code paths.
+ */
+public class ImplicitKDTree<T> {
+
+    /**
+     * Ranges with less points are built sequentially.
+     */
+    private static final int PARALLEL_THRESHOLD = 8192;
+
+    /**
+     * Maximum number of points used to estimate the spread of a range.
+     */
+    private static final int SPREAD_SAMPLES = 64;
+
+    /**
+     * Number of coordinates per point.
+     */
+    private final int dimension;
+
+    /**
+     * Coordinates of the points in tree order, one array per axis.
+     */
+    private final float[][] coordinates;
+
+    /**
+     * The first three coordinate arrays (null if the dimension is lower) for the 2D and 3D queries.
+     */
+    private final float[] xs;
+    private final float[] ys;
+    private final float[] zs;
+
+    /**
+     * Split axis of the subtree rooted at each position.
+     */
+    private final byte[] splitAxes;
+
+    /**
+     * Payload of the points in tree order, null if the tree was built from coordinates only.
+     */
+    private final Object[] payload;
+
+    /**
+     * Index of each point in the source list (or coordinate arrays).
+     */
+    private final int[] sourceIndices;
+
+    private ImplicitKDTree(float[][] coordinates, Object[] payload, int[] sourceIndices) {
+        if (coordinates.length < 1 || coordinates.length > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid dimension: " + coordinates.length);
+        }
+        this.dimension = coordinates.length;
+        this.coordinates = coordinates;
+        this.xs = coordinates[0];
+        this.ys = dimension > 1 ? coordinates[1] : null;
+        this.zs = dimension > 2 ? coordinates[2] : null;
+        this.payload = payload;
+        this.sourceIndices = sourceIndices;
+        this.splitAxes = new byte[sourceIndices.length];
+        ForkJoinPool.commonPool().invoke(new BuildTask(0, sourceIndices.length));
+        if (payload != null) {
+            Object[] source = payload.clone();
+            IntStream.range(0, payload.length).parallel().forEach(i -> payload[i] = source[sourceIndices[i]]);
+        }
+    }
+
+    /**
+     * Build the tree over the data points (positions and payload).
+     */
+    public static <T> ImplicitKDTree<T> from(List<KDTreeData<T>> points) {
+        int n = points.size();
+        float[][] coordinates = new float[2][n];
+        Object[] payload = new Object[n];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            Vector2f p = points.get(i).getP();
+            coordinates[0][i] = p.x;
+            coordinates[1][i] = p.y;
+            payload[i] = points.get(i).getData();
+        });
+        return new ImplicitKDTree<>(coordinates, payload, createIdentity(n));
+    }
+
+    /**
+     * Build the tree over the 3D positions with the payload data.get(i) for positions.get(i).
+     */
+    public static <T> ImplicitKDTree<T> from(List<Vector3f> positions, List<T> data) {
+        int n = positions.size();
+        float[][] coordinates = new float[3][n];
+        Object[] payload = new Object[n];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            Vector3f p = positions.get(i);
+            coordinates[0][i] = p.x;
+            coordinates[1][i] = p.y;
+            coordinates[2][i] = p.z;
+            payload[i] = data.get(i);
+        });
+        return new ImplicitKDTree<>(coordinates, payload, createIdentity(n));
+    }
+
+    /**
+     * Build the tree over the 2D points (xs[i], ys[i]) without payload. The arrays are copied.
+     */
+    public static <T> ImplicitKDTree<T> from(float[] xs, float[] ys) {
+        return new ImplicitKDTree<>(new float[][]{xs.clone(), ys.clone()}, null, createIdentity(xs.length));
+    }
+
+    /**
+     * Build the tree over points with the given dimension without payload. The coordinates of point i are
+     * coordinates[i * dimension ... (i + 1) * dimension - 1] (interleaved, e.g. a vertex position array).
+     */
+    public static <T> ImplicitKDTree<T> from(float[] coordinates, int dimension) {
+        int n = coordinates.length / dimension;
+        float[][] axes = new float[dimension][n];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            for (int axis = 0; axis < dimension; axis++) {
+                axes[axis][i] = coordinates[i * dimension + axis];
+            }
+        });
+        return new ImplicitKDTree<>(axes, null, createIdentity(n));
+    }
+
+    /**
+     * Build the tree over the vertex positions of the mesh, the source index of a point is its vertex index.
+     */
+    public static ImplicitKDTree<Void> fromVertices(TriangleMesh mesh) {
+        return from(mesh.getPositionArray(), 3);
+    }
+
+    private static int[] createIdentity(int n) {
+        int[] indices = new int[n];
+        IntStream.range(0, n).parallel().forEach(i -> indices[i] = i);
+        return indices;
+    }
+
+    /**
+     * Partitions the range from..to-1 at its median and continues with both halves (forked if large enough).
+     */
+    private class BuildTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+
+        BuildTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from < PARALLEL_THRESHOLD) {
+                build(from, to);
+                return;
+            }
+            int mid = split(from, to);
+            invokeAll(new BuildTask(from, mid), new BuildTask(mid + 1, to));
+        }
+    }
+
+    /**
+     * Sequentially partition the range from..to-1 at its median and recurse.
+     */
+    private void build(int from, int to) {
+        while (to - from > 1) {
+            int mid = split(from, to);
+            build(from, mid);
+            from = mid + 1;
+        }
+    }
+
+    /**
+     * Partition the range from..to-1 at its median along the axis with the largest spread, returns the median
+     * position.
+     */
+    private int split(int from, int to) {
+        int axis = getMaxSpreadAxis(from, to);
+        int mid = (from + to) >>> 1;
+        splitAxes[mid] = (byte) axis;
+        select(axis, from, to - 1, mid);
+        return mid;
+    }
+
+    /**
+     * Axis with the largest extent of the points in the range from..to-1. Large ranges are estimated from a
+     * strided sample of SPREAD_SAMPLES points, which is enough to pick the axis.
+     */
+    private int getMaxSpreadAxis(int from, int to) {
+        int stride = Math.max(1, (to - from) / SPREAD_SAMPLES);
+        int bestAxis = 0;
+        float bestSpread = -1;
+        for (int axis = 0; axis < dimension; axis++) {
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+            float[] values = coordinates[axis];
+            for (int i = from; i < to; i += stride) {
+                min = Math.min(min, values[i]);
+                max = Math.max(max, values[i]);
+            }
+            if (max - min > bestSpread) {
+                bestSpread = max - min;
+                bestAxis = axis;
+            }
+        }
+        return bestAxis;
+    }
+
+    /**
+     * Quickselect: reorder the points at the positions left..right such that position k holds the point with the
+     * k-th smallest coordinate on the axis, all positions before it smaller or equal and all after it larger or
+     * equal coordinates.
+     */
+    private void select(int axis, int left, int right, int k) {
+        float[] values = coordinates[axis];
+        while (right > left) {
+            // Median of three as pivot, moved to the right end
+            int m = (left + right) >>> 1;
+            if (values[m] < values[left]) {
+                swap(m, left);
+            }
+            if (values[right] < values[left]) {
+                swap(right, left);
+            }
+            if (values[m] < values[right]) {
+                swap(m, right);
+            }
+            float pivot = values[right];
+
+            // Hoare partition
+            int i = left - 1;
+            int j = right;
+            while (true) {
+                do {
+                    i++;
+                } while (values[i] < pivot);
+                do {
+                    j--;
+                } while (j > left && values[j] > pivot);
+                if (i >= j) {
+                    break;
+                }
+                swap(i, j);
+            }
+            swap(i, right);
+
+            if (k == i) {
+                return;
+            } else if (k < i) {
+                right = i - 1;
+            } else {
+                left = i + 1;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        int tmpIndex = sourceIndices[i];
+        sourceIndices[i] = sourceIndices[j];
+        sourceIndices[j] = tmpIndex;
+        for (float[] values : coordinates) {
+            float tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+    }
+
+    /**
+     * Returns the position (tree order) of the point closest to (x, y), -1 for an empty tree. 2D trees only.
+     */
+    public int getNearestNeighbor(float x, float y) {
+        return getNearestNeighbor(x, y, null, Float.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Returns the position of the point closest to (x, y) that is not marked in deleted (indexed by position, may
+     * be null) and closer than sqrt(maxSqrDistance), -1 if there is none. 2D trees only.
+     */
+    int getNearestNeighbor(float x, float y, boolean[] deleted, float maxSqrDistance) {
+        checkDimension(2);
+        if (size() == 0) {
+            return -1;
+        }
+        return (int) nearest2D(0, size(), x, y, deleted, pack(maxSqrDistance, -1));
+    }
+
+    /**
+     * Returns the position (tree order) of the point closest to (x, y, z), -1 for an empty tree. 3D trees only.
+     */
+    public int getNearestNeighbor(float x, float y, float z) {
+        checkDimension(3);
+        if (size() == 0) {
+            return -1;
+        }
+        return (int) nearest3D(0, size(), x, y, z, pack(Float.POSITIVE_INFINITY, -1));
+    }
+
+    /**
+     * Returns the position (tree order) of the point closest to p, -1 for an empty tree. 3D trees only.
+     */
+    public int getNearestNeighbor(Vector3f p) {
+        return getNearestNeighbor(p.x, p.y, p.z);
+    }
+
+    /**
+     * Returns the position (tree order) of the point closest to the query point (dimension coordinates), -1 for
+     * an empty tree.
+     */
+    public int getNearestNeighbor(float[] query) {
+        checkDimension(query.length);
+        if (size() == 0) {
+            return -1;
+        }
+        switch (dimension) {
+            case 2:
+                return getNearestNeighbor(query[0], query[1]);
+            case 3:
+                return getNearestNeighbor(query[0], query[1], query[2]);
+            default:
+                return (int) nearest(0, size(), query, pack(Float.POSITIVE_INFINITY, -1));
+        }
+    }
+
+    private void checkDimension(int queryDimension) {
+        if (queryDimension != dimension) {
+            throw new IllegalArgumentException("Query dimension " + queryDimension + " does not match tree dimension "
+                    + dimension);
+        }
+    }
+
+    /**
+     * 2D nearest neighbor search in the range from..to-1, skipping the positions marked in deleted (may be null).
+     * The best candidate so far is packed into a long (squared distance in the upper, position in the lower
+     * 32 bits), so the recursion needs no result object.
+     */
+    private long nearest2D(int from, int to, float x, float y, boolean[] deleted, long best) {
+        if (from >= to) {
+            return best;
+        }
+        int mid = (from + to) >>> 1;
+        float dx = xs[mid] - x;
+        float dy = ys[mid] - y;
+        float sqrDist = dx * dx + dy * dy;
+        if (sqrDist < getSqrDistance(best) && (deleted == null || !deleted[mid])) {
+            best = pack(sqrDist, mid);
+        }
+        float distanceToPlane = splitAxes[mid] == 0 ? -dx : -dy;
+        if (distanceToPlane < 0) {
+            best = nearest2D(from, mid, x, y, deleted, best);
+            if (distanceToPlane * distanceToPlane < getSqrDistance(best)) {
+                best = nearest2D(mid + 1, to, x, y, deleted, best);
+            }
+        } else {
+            best = nearest2D(mid + 1, to, x, y, deleted, best);
+            if (distanceToPlane * distanceToPlane < getSqrDistance(best)) {
+                best = nearest2D(from, mid, x, y, deleted, best);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 3D nearest neighbor search in the range from..to-1, see nearest2D().
+     */
+    private long nearest3D(int from, int to, float x, float y, float z, long best) {
+        if (from >= to) {
+            return best;
+        }
+        int mid = (from + to) >>> 1;
+        float dx = xs[mid] - x;
+        float dy = ys[mid] - y;
+        float dz = zs[mid] - z;
+        float sqrDist = dx * dx + dy * dy + dz * dz;
+        if (sqrDist < getSqrDistance(best)) {
+            best = pack(sqrDist, mid);
+        }
+        int axis = splitAxes[mid];
+        float distanceToPlane = axis == 0 ? -dx : axis == 1 ? -dy : -dz;
+        if (distanceToPlane < 0) {
+            best = nearest3D(from, mid, x, y, z, best);
+            if (distanceToPlane * distanceToPlane < getSqrDistance(best)) {
+                best = nearest3D(mid + 1, to, x, y, z, best);
+            }
+        } else {
+            best = nearest3D(mid + 1, to, x, y, z, best);
+            if (distanceToPlane * distanceToPlane < getSqrDistance(best)) {
+                best = nearest3D(from, mid, x, y, z, best);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Nearest neighbor search for any dimension in the range from..to-1, see nearest2D().
+     */
+    private long nearest(int from, int to, float[] query, long best) {
+        if (from >= to) {
+            return best;
+        }
+        int mid = (from + to) >>> 1;
+        float sqrDist = 0;
+        for (int axis = 0; axis < dimension; axis++) {
+            float d = coordinates[axis][mid] - query[axis];
+            sqrDist += d * d;
+        }
+        if (sqrDist < getSqrDistance(best)) {
+            best = pack(sqrDist, mid);
+        }
+        int axis = splitAxes[mid];
+        float distanceToPlane = query[axis] - coordinates[axis][mid];
+        if (distanceToPlane < 0) {
+            best = nearest(from, mid, query, best);
+            if (distanceToPlane * distanceToPlane < getSqrDistance(best)) {
+                best = nearest(mid + 1, to, query, best);
+            }
+        } else {
+            best = nearest(mid + 1, to, query, best);
+            if (distanceToPlane * distanceToPlane < getSqrDistance(best)) {
+                best = nearest(from, mid, query, best);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Pack a non-negative squared distance and a position into a long. Non-negative floats compare like their
+     * bit patterns.
+     */
+    static long pack(float sqrDistance, int position) {
+        return ((long) Float.floatToRawIntBits(sqrDistance) << 32) | (position & 0xFFFFFFFFL);
+    }
+
+    static float getSqrDistance(long packed) {
+        return Float.intBitsToFloat((int) (packed >>> 32));
+    }
+
+    // +++ GETTER/SETTER +++++++++++++++++++++++++
+
+    public int size() {
+        return sourceIndices.length;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Coordinate of the point at the position (tree order) on the given axis.
+     */
+    public float getCoordinate(int position, int axis) {
+        return coordinates[axis][position];
+    }
+
+    public float getX(int position) {
+        return getCoordinate(position, 0);
+    }
+
+    public float getY(int position) {
+        return getCoordinate(position, 1);
+    }
+
+    public float getZ(int position) {
+        return getCoordinate(position, 2);
+    }
+
+    /**
+     * Payload of the point at the position (tree order), null if the tree has no payload.
+     */
+    @SuppressWarnings("unchecked")
+    public T getData(int position) {
+        return payload == null ? null : (T) payload[position];
+    }
+
+    /**
+     * Index of the point at the position (tree order) in the source list.
+     */
+    public int getSourceIndex(int position) {
+        return sourceIndices[position];
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.a5.kdtree;
+
+import com.jme3.math.Vector2f;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.IntStream;
+
+/**
+ * Builds a balanced kd tree over a list of data points in O(n log n).
+ * <p>
+ * The coordinates are copied into flat arrays once. Each node selects the median of its range in the split
+ * direction with quickselect on a shared index array (expected O(n) per level, no sorting, no sub lists), the
+ * lower half becomes the negative child, the upper half the positive child. The split directions alternate
+ * between X and Y, the cell bounds (ll, ur) of each node are the bounds of its parent cut at the split value.
+ * <p>
+ * The two subtrees of a node cover disjoint ranges of the index array, so they are built in parallel (fork/join)
+ * as long as the range is larger than a threshold; smaller subtrees are built sequentially.
+ */
+public class KDTreeBuilder<T> {
+
+    /**
+     * Subtrees with less points are built sequentially.
+     */
+    private static final int PARALLEL_THRESHOLD = 8192;
+
+    /**
+     * The data points, indexed by the index array.
+     */
+    private List<KDTreeData<T>> points;
+
+    /**
+     * Coordinates of the data points, permuted together with the index array (sequential memory access while
+     * partitioning).
+     */
+    private float[] xs;
+    private float[] ys;
+
+    /**
+     * Permutation of the point indices, partitioned in place while building.
+     */
+    private int[] indices;
+
+    /**
+     * Build the tree over all points. Returns null for an empty list.
+     */
+    public KDTreeNode<T> build(List<KDTreeData<T>> points) {
+        if (points == null || points.isEmpty()) {
+            return null;
+        }
+        this.points = points;
+        int n = points.size();
+        xs = new float[n];
+        ys = new float[n];
+        indices = new int[n];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            Vector2f p = points.get(i).getP();
+            xs[i] = p.x;
+            ys[i] = p.y;
+            indices[i] = i;
+        });
+        Vector2f ll = new Vector2f(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
+        Vector2f ur = new Vector2f(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
+        for (int i = 0; i < n; i++) {
+            ll.set(Math.min(ll.x, xs[i]), Math.min(ll.y, ys[i]));
+            ur.set(Math.max(ur.x, xs[i]), Math.max(ur.y, ys[i]));
+        }
+        KDTreeNode<T> root = ForkJoinPool.commonPool().invoke(
+                new BuildTask(0, n, KDTreeNode.SplitDirection.X, ll, ur));
+        this.points = null;
+        xs = ys = null;
+        indices = null;
+        return root;
+    }
+
+    /**
+     * Builds the subtree over indices[from..to-1] with the given split direction and cell bounds. Forks the
+     * negative subtree if the range is large enough.
+     */
+    private class BuildTask extends RecursiveTask<KDTreeNode<T>> {
+        private final int from;
+        private final int to;
+        private final KDTreeNode.SplitDirection direction;
+        private final Vector2f ll;
+        private final Vector2f ur;
+
+        BuildTask(int from, int to, KDTreeNode.SplitDirection direction, Vector2f ll, Vector2f ur) {
+            this.from = from;
+            this.to = to;
+            this.direction = direction;
+            this.ll = ll;
+            this.ur = ur;
+        }
+
+        @Override
+        protected KDTreeNode<T> compute() {
+            if (to - from < PARALLEL_THRESHOLD) {
+                return build(from, to, direction, ll, ur);
+            }
+            int mid = (from + to) >>> 1;
+            KDTreeNode<T> node = createNode(from, to, mid, direction, ll, ur);
+            BuildTask neg = new BuildTask(from, mid, direction.next(), ll, getNegUR(node));
+            BuildTask pos = new BuildTask(mid + 1, to, direction.next(), getPosLL(node), ur);
+            neg.fork();
+            node.setPos(pos.compute());
+            node.setNeg(neg.join());
+            return node;
+        }
+    }
+
+    /**
+     * Build the subtree over indices[from..to-1] with the given split direction and cell bounds (sequentially).
+     */
+    private KDTreeNode<T> build(int from, int to, KDTreeNode.SplitDirection direction, Vector2f ll, Vector2f ur) {
+        if (from >= to) {
+            return null;
+        }
+        int mid = (from + to) >>> 1;
+        KDTreeNode<T> node = createNode(from, to, mid, direction, ll, ur);
+        node.setNeg(build(from, mid, direction.next(), ll, getNegUR(node)));
+        node.setPos(build(mid + 1, to, direction.next(), getPosLL(node), ur));
+        return node;
+    }
+
+    /**
+     * Partition indices[from..to-1] at the median position mid and create the node for the median point.
+     */
+    private KDTreeNode<T> createNode(int from, int to, int mid, KDTreeNode.SplitDirection direction,
+                                     Vector2f ll, Vector2f ur) {
+        select(direction == KDTreeNode.SplitDirection.X ? xs : ys, xs, ys, indices, from, to - 1, mid);
+        return new KDTreeNode<>(points.get(indices[mid]), indices[mid], direction, ll, ur);
+    }
+
+    /**
+     * Upper right corner of the cell of the negative child.
+     */
+    private Vector2f getNegUR(KDTreeNode<T> node) {
+        Vector2f split = node.getData().getP();
+        return node.getSplittingDirection() == KDTreeNode.SplitDirection.X ? new Vector2f(split.x, node.getUR().y)
+                : new Vector2f(node.getUR().x, split.y);
+    }
+
+    /**
+     * Lower left corner of the cell of the positive child.
+     */
+    private Vector2f getPosLL(KDTreeNode<T> node) {
+        Vector2f split = node.getData().getP();
+        return node.getSplittingDirection() == KDTreeNode.SplitDirection.X ? new Vector2f(split.x, node.getLL().y)
+                : new Vector2f(node.getLL().x, split.y);
+    }
+
+    /**
+     * Quickselect: reorder the range left..right of xs, ys and indices such that position k holds the k-th
+     * smallest coordinate (coordinates is xs or ys), all positions before it smaller or equal and all after it
+     * larger or equal coordinates.
+     */
+    static void select(float[] coordinates, float[] xs, float[] ys, int[] indices, int left, int right, int k) {
+        while (right > left) {
+            // Median of three as pivot, moved to the right end
+            int m = (left + right) >>> 1;
+            if (coordinates[m] < coordinates[left]) {
+                swap(xs, ys, indices, m, left);
+            }
+            if (coordinates[right] < coordinates[left]) {
+                swap(xs, ys, indices, right, left);
+            }
+            if (coordinates[m] < coordinates[right]) {
+                swap(xs, ys, indices, m, right);
+            }
+            float pivot = coordinates[right];
+
+            // Hoare partition
+            int i = left - 1;
+            int j = right;
+            while (true) {
+                do {
+                    i++;
+                } while (coordinates[i] < pivot);
+                do {
+                    j--;
+                } while (j > left && coordinates[j] > pivot);
+                if (i >= j) {
+                    break;
+                }
+                swap(xs, ys, indices, i, j);
+            }
+            swap(xs, ys, indices, i, right);
+
+            if (k == i) {
+                return;
+            } else if (k < i) {
+                right = i - 1;
+            } else {
+                left = i + 1;
+            }
+        }
+    }
+
+    private static void swap(float[] xs, float[] ys, int[] indices, int i, int j) {
+        int tmpIndex = indices[i];
+        indices[i] = indices[j];
+        indices[j] = tmpIndex;
+        float tmp = xs[i];
+        xs[i] = xs[j];
+        xs[j] = tmp;
+        tmp = ys[i];
+        ys[i] = ys[j];
+        ys[j] = tmp;
+    }
+}
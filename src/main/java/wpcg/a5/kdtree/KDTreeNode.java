@@ -37,6 +37,11 @@ public class KDTreeNode<T> {
      */
     private Vector2f ur;
 
+    /**
+     * Index of the data point in the list the tree was built from, -1 if unknown.
+     */
+    private int index;
+
     /**
      * This enumeration encodes the split direction.: x or y
      */
@@ -53,7 +58,12 @@ public class KDTreeNode<T> {
     }
 
     public KDTreeNode(KDTreeData<T> data, SplitDirection splitDirection, Vector2f ll, Vector2f ur) {
+        this(data, -1, splitDirection, ll, ur);
+    }
+
+    public KDTreeNode(KDTreeData<T> data, int index, SplitDirection splitDirection, Vector2f ll, Vector2f ur) {
         this.data = data;
+        this.index = index;
         this.splitDirection = splitDirection;
         this.children = null;
         this.ll = ll;
@@ -118,4 +128,20 @@ public class KDTreeNode<T> {
     public Vector2f getUR() {
         return ur;
     }
+
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Sets the bounding box of the node, used to complete hand-built trees (see NearestNeighborSearch).
+     */
+    void setBounds(Vector2f ll, Vector2f ur) {
+        this.ll = ll;
+        this.ur = ur;
+    }
+
+    void setIndex(int index) {
+        this.index = index;
+    }
 }
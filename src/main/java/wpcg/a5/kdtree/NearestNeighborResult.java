@@ -0,0 +1,76 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.a5.kdtree;
+
+/**
+ * Reusable result of a nearest neighbor query: the closest data point, its index in the list of points and the
+ * squared distance to the query position. Create once and pass it to every query to avoid allocations.
+ */
+public class NearestNeighborResult<T> {
+
+    /**
+     * Index of the closest data point in the list of points, -1 if nothing was found.
+     */
+    private int index;
+
+    /**
+     * Squared distance to the closest data point.
+     */
+    private float sqrDistance;
+
+    /**
+     * The closest data point, null if nothing was found.
+     */
+    private KDTreeData<T> data;
+
+    /**
+     * Number of tree nodes visited by the query.
+     */
+    private int numberOfVisitedNodes;
+
+    public NearestNeighborResult() {
+        clear();
+    }
+
+    /**
+     * Reset to "nothing found".
+     */
+    public void clear() {
+        index = -1;
+        sqrDistance = Float.POSITIVE_INFINITY;
+        data = null;
+        numberOfVisitedNodes = 0;
+    }
+
+    void set(int index, float sqrDistance, KDTreeData<T> data, int numberOfVisitedNodes) {
+        this.index = index;
+        this.sqrDistance = sqrDistance;
+        this.data = data;
+        this.numberOfVisitedNodes = numberOfVisitedNodes;
+    }
+
+    public boolean isFound() {
+        return data != null;
+    }
+
+    // +++ GETTER/SETTER +++++++++++++++++++++++++
+
+    public int getIndex() {
+        return index;
+    }
+
+    public float getSqrDistance() {
+        return sqrDistance;
+    }
+
+    public KDTreeData<T> getData() {
+        return data;
+    }
+
+    public int getNumberOfVisitedNodes() {
+        return numberOfVisitedNodes;
+    }
+}
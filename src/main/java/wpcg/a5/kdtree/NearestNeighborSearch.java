@@ -6,13 +6,23 @@
 package wpcg.a5.kdtree;
 
 import com.jme3.math.Vector2f;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
 
 
 /**
  * Use a KD tree to search the closest point from a given position.
  */
-public class NearestNeighborSearch<T> {
+public class NearestNeighborSearch<T> implements SpatialIndex<T> {
 
     /**
      * This three must contain all data points and is used to search the closest data point.
@@ -24,9 +34,129 @@ public class NearestNeighborSearch<T> {
      */
     private List<KDTreeData<T>> points;
 
+    /**
+     * Stack of the iterative search for single queries. Reused between queries, so a search instance must not be
+     * used by several threads at the same time (the batch queries use one stack per task).
+     */
+    private SearchStack<T> searchStack;
+
+    /**
+     * Queries per task in the batch queries.
+     */
+    private static final int BATCH_CHUNK_SIZE = 1024;
+
+    /**
+     * Result object for getNearestNeighbor(Vector2f).
+     */
+    private NearestNeighborResult<T> cacheResult;
+
+    /**
+     * The queries need the bounding box (KDTreeNode.getLL()/getUR()) and the point index (KDTreeNode.getIndex())
+     * of each node. KDTreeBuilder sets both, for other trees missing values are completed here: the bounding box
+     * of the subtree and the position of the data point in the list of points.
+     */
     public NearestNeighborSearch(KDTreeNode<T> kdTree, List<KDTreeData<T>> points) {
         this.kdTree = kdTree;
         this.points = points;
+        this.searchStack = new SearchStack<>();
+        this.cacheResult = new NearestNeighborResult<>();
+        completeNodes();
+    }
+
+    /**
+     * Set the missing bounding boxes and indices of the tree nodes. Throws an IllegalArgumentException if a node
+     * without index holds a data point which is not in the list of points.
+     */
+    private void completeNodes() {
+        // Nodes in pre-order, so children are processed before their parents when iterating backwards.
+        List<KDTreeNode<T>> nodes = new ArrayList<>();
+        boolean complete = true;
+        Deque<KDTreeNode<T>> stack = new ArrayDeque<>();
+        if (kdTree != null) {
+            stack.push(kdTree);
+        }
+        while (!stack.isEmpty()) {
+            KDTreeNode<T> node = stack.pop();
+            nodes.add(node);
+            complete &= node.getLL() != null && node.getUR() != null && node.getIndex() >= 0;
+            if (node.getPosChild() != null) {
+                stack.push(node.getPosChild());
+            }
+            if (node.getNegChild() != null) {
+                stack.push(node.getNegChild());
+            }
+        }
+        if (complete) {
+            return;
+        }
+
+        Map<KDTreeData<T>, Integer> pointIndices = new IdentityHashMap<>();
+        if (points != null) {
+            for (int i = points.size() - 1; i >= 0; i--) {
+                pointIndices.put(points.get(i), i);
+            }
+        }
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            KDTreeNode<T> node = nodes.get(i);
+            if (node.getIndex() < 0) {
+                Integer index = pointIndices.get(node.getData());
+                if (index == null) {
+                    throw new IllegalArgumentException("Data point of a kd tree node is not in the list of points");
+                }
+                node.setIndex(index);
+            }
+            if (node.getLL() == null || node.getUR() == null) {
+                Vector2f p = node.getData().getP();
+                Vector2f ll = new Vector2f(p);
+                Vector2f ur = new Vector2f(p);
+                for (KDTreeNode<T> child : Arrays.asList(node.getNegChild(), node.getPosChild())) {
+                    if (child != null) {
+                        ll.set(Math.min(ll.x, child.getLL().x), Math.min(ll.y, child.getLL().y));
+                        ur.set(Math.max(ur.x, child.getUR().x), Math.max(ur.y, child.getUR().y));
+                    }
+                }
+                node.setBounds(ll, ur);
+            }
+        }
+    }
+
+    /**
+     * Explicit stack of the iterative search: nodes, the squared distances of their cells to the query position
+     * and the per axis offsets of the query to the cells. Also holds the best point of the current search.
+     */
+    private static class SearchStack<T> {
+        KDTreeNode<T>[] nodes;
+        float[] sqrDistances;
+        float[] offsetsX;
+        float[] offsetsY;
+        KDTreeNode<T> best;
+        float bestSqrDist;
+        int numberOfVisitedNodes;
+
+        @SuppressWarnings("unchecked")
+        SearchStack() {
+            nodes = new KDTreeNode[64];
+            sqrDistances = new float[64];
+            offsetsX = new float[64];
+            offsetsY = new float[64];
+        }
+
+        /**
+         * Put the node with the offsets of the query to its cell at the given position.
+         */
+        void set(int position, KDTreeNode<T> node, float offsetX, float offsetY) {
+            if (position == nodes.length) {
+                // Only required for degenerated trees
+                nodes = Arrays.copyOf(nodes, 2 * nodes.length);
+                sqrDistances = Arrays.copyOf(sqrDistances, 2 * sqrDistances.length);
+                offsetsX = Arrays.copyOf(offsetsX, 2 * offsetsX.length);
+                offsetsY = Arrays.copyOf(offsetsY, 2 * offsetsY.length);
+            }
+            nodes[position] = node;
+            offsetsX[position] = offsetX;
+            offsetsY[position] = offsetY;
+            sqrDistances[position] = offsetX * offsetX + offsetY * offsetY;
+        }
     }
 
     /**
@@ -37,7 +167,252 @@ public class NearestNeighborSearch<T> {
             System.out.println("Cannot apply nearest neighbor search on null tree");
             return null;
         }
-        return getNearestNeighbor(p, kdTree);
+        getNearestNeighbor(p.x, p.y, cacheResult);
+        return cacheResult.getData();
+    }
+
+    /**
+     * Find the closest data point to (x, y) and write it to the result (index, squared distance, data point).
+     * Iterative with an explicit stack, no allocations. Subtrees are skipped if their cell is farther away than
+     * the best point found so far. The cell distances are updated incrementally: the cell of the far child only
+     * differs from its parent cell on the split axis, where the offset becomes the distance to the split plane.
+     * Returns false if the tree is empty.
+     */
+    @Override
+    public boolean getNearestNeighbor(float x, float y, NearestNeighborResult<T> result) {
+        result.clear();
+        if (kdTree == null) {
+            return false;
+        }
+        search(x, y, searchStack, 1, Integer.MAX_VALUE);
+        result.set(searchStack.best.getIndex(), searchStack.bestSqrDist, searchStack.best.getData(),
+                searchStack.numberOfVisitedNodes);
+        return true;
+    }
+
+    /**
+     * Approximate nearest neighbor search for real time use. Two knobs trade accuracy for latency:
+     * <ul>
+     * <li>epsilon: subtrees are skipped if their cell is farther away than bestDistance / (1 + epsilon), so the
+     * returned point is at most (1 + epsilon) times farther away than the true nearest neighbor. 0 is exact.</li>
+     * <li>maxVisitedNodes: the search stops after visiting that many nodes and returns the best point so far
+     * (no error bound). The first descent towards the query position is usually already close.</li>
+     * </ul>
+     * The number of visited nodes is reported in the result to tune both values. Returns false if the tree is
+     * empty.
+     */
+    public boolean getApproximateNearestNeighbor(float x, float y, float epsilon, int maxVisitedNodes,
+                                                 NearestNeighborResult<T> result) {
+        result.clear();
+        if (kdTree == null) {
+            return false;
+        }
+        float pruneScale = 1.0f / ((1 + epsilon) * (1 + epsilon));
+        search(x, y, searchStack, pruneScale, Math.max(1, maxVisitedNodes));
+        result.set(searchStack.best.getIndex(), searchStack.bestSqrDist, searchStack.best.getData(),
+                searchStack.numberOfVisitedNodes);
+        return true;
+    }
+
+    /**
+     * Nearest neighbor search for (x, y) in the (non-empty) tree, the result is stored in stack.best,
+     * stack.bestSqrDist and stack.numberOfVisitedNodes. Cells with a squared distance of at least
+     * pruneScale * bestSqrDist are skipped (1 for the exact search), at most maxVisitedNodes nodes are visited.
+     */
+    private void search(float x, float y, SearchStack<T> stack, float pruneScale, int maxVisitedNodes) {
+        float bestSqrDist = Float.POSITIVE_INFINITY;
+        float pruneSqrDist = Float.POSITIVE_INFINITY;
+        KDTreeNode<T> best = null;
+        int visited = 0;
+        int size = 0;
+        float rootOffsetX = Math.max(0, Math.max(kdTree.getLL().x - x, x - kdTree.getUR().x));
+        float rootOffsetY = Math.max(0, Math.max(kdTree.getLL().y - y, y - kdTree.getUR().y));
+        stack.set(size++, kdTree, rootOffsetX, rootOffsetY);
+        search:
+        while (size > 0) {
+            size--;
+            if (stack.sqrDistances[size] >= pruneSqrDist) {
+                continue;
+            }
+            KDTreeNode<T> node = stack.nodes[size];
+            float offsetX = stack.offsetsX[size];
+            float offsetY = stack.offsetsY[size];
+            // Descend along the near children, remember the far children on the stack.
+            while (node != null) {
+                if (visited == maxVisitedNodes) {
+                    break search;
+                }
+                visited++;
+                Vector2f q = node.getData().getP();
+                float dx = q.x - x;
+                float dy = q.y - y;
+                float sqrDist = dx * dx + dy * dy;
+                if (sqrDist < bestSqrDist) {
+                    bestSqrDist = sqrDist;
+                    pruneSqrDist = sqrDist * pruneScale;
+                    best = node;
+                }
+                boolean splitX = node.getSplittingDirection() == KDTreeNode.SplitDirection.X;
+                float distanceToPlane = splitX ? x - q.x : y - q.y;
+                KDTreeNode<T> far = distanceToPlane < 0 ? node.getPosChild() : node.getNegChild();
+                if (far != null) {
+                    float farOffset = Math.abs(distanceToPlane);
+                    float farOffsetX = splitX ? Math.max(offsetX, farOffset) : offsetX;
+                    float farOffsetY = splitX ? offsetY : Math.max(offsetY, farOffset);
+                    if (farOffsetX * farOffsetX + farOffsetY * farOffsetY < pruneSqrDist) {
+                        stack.set(size++, far, farOffsetX, farOffsetY);
+                    }
+                }
+                node = distanceToPlane < 0 ? node.getNegChild() : node.getPosChild();
+            }
+        }
+        stack.best = best;
+        stack.bestSqrDist = bestSqrDist;
+        stack.numberOfVisitedNodes = visited;
+    }
+
+    /**
+     * Batch query: for each query position (xs[i], ys[i]) write the index of the closest data point (see
+     * KDTreeNode.getIndex(), -1 for an empty tree) to results[i]. The queries are processed in parallel chunks
+     * on the common fork/join pool. If sortQueries is true, the queries are processed in Morton (Z-order) order
+     * of their positions: consecutive queries then follow similar paths through the tree, which keeps the
+     * visited nodes in the cache. Worth it for large, spatially unordered batches.
+     */
+    public void getNearestNeighbors(float[] xs, float[] ys, int[] results, boolean sortQueries) {
+        int n = Math.min(Math.min(xs.length, ys.length), results.length);
+        if (kdTree == null) {
+            Arrays.fill(results, 0, n, -1);
+            return;
+        }
+        int[] order = sortQueries ? getMortonOrder(xs, ys, n) : null;
+        ForkJoinPool.commonPool().invoke(new BatchTask(xs, ys, results, order, 0, n));
+    }
+
+    /**
+     * Processes the queries from..to-1 (positions in the order array, if given), split into chunks.
+     */
+    private class BatchTask extends RecursiveAction {
+        private final float[] xs;
+        private final float[] ys;
+        private final int[] results;
+        private final int[] order;
+        private final int from;
+        private final int to;
+
+        BatchTask(float[] xs, float[] ys, int[] results, int[] order, int from, int to) {
+            this.xs = xs;
+            this.ys = ys;
+            this.results = results;
+            this.order = order;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > BATCH_CHUNK_SIZE) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new BatchTask(xs, ys, results, order, from, mid),
+                        new BatchTask(xs, ys, results, order, mid, to));
+                return;
+            }
+            SearchStack<T> stack = new SearchStack<>();
+            for (int i = from; i < to; i++) {
+                int query = order == null ? i : order[i];
+                search(xs[query], ys[query], stack, 1, Integer.MAX_VALUE);
+                results[query] = stack.best.getIndex();
+            }
+        }
+    }
+
+    /**
+     * Returns the query indices 0..n-1 sorted by the Morton code of the query positions (16 bits per axis,
+     * relative to the bounds of the queries).
+     */
+    private static int[] getMortonOrder(float[] xs, float[] ys, int n) {
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxX = Math.max(maxX, xs[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        float scaleX = maxX > minX ? 65535f / (maxX - minX) : 0;
+        float scaleY = maxY > minY ? 65535f / (maxY - minY) : 0;
+        float offsetX = minX;
+        float offsetY = minY;
+        // Morton code in the upper, query index in the lower 32 bits -> sorting the longs sorts the queries.
+        long[] keys = new long[n];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            int cx = (int) ((xs[i] - offsetX) * scaleX);
+            int cy = (int) ((ys[i] - offsetY) * scaleY);
+            keys[i] = ((long) (spreadBits(cx) | (spreadBits(cy) << 1)) << 32) | i;
+        });
+        Arrays.parallelSort(keys);
+        int[] order = new int[n];
+        IntStream.range(0, n).parallel().forEach(i -> order[i] = (int) keys[i]);
+        return order;
+    }
+
+    /**
+     * Spread the lower 16 bits of v to the even bit positions (bit i -> bit 2i).
+     */
+    private static long spreadBits(int v) {
+        long x = v & 0xFFFFL;
+        x = (x | (x << 8)) & 0x00FF00FFL;
+        x = (x | (x << 4)) & 0x0F0F0F0FL;
+        x = (x | (x << 2)) & 0x33333333L;
+        x = (x | (x << 1)) & 0x55555555L;
+        return x;
+    }
+
+    /**
+     * Find the k closest data points to p. The indices (in the list of points the tree was built from, see
+     * KDTreeNode.getIndex()) and squared distances are written to the caller provided buffers, sorted by
+     * distance. k is limited by the buffer sizes. Returns the number of points found (k or less if the tree is
+     * smaller).
+     */
+    public int kNearest(Vector2f p, int k, int[] indices, float[] sqrDistances) {
+        k = Math.min(k, Math.min(indices.length, sqrDistances.length));
+        if (kdTree == null || k <= 0) {
+            return 0;
+        }
+        // The buffers are used as max heap on the squared distance while searching ...
+        int count = kNearest(p.x, p.y, kdTree, k, indices, sqrDistances, 0);
+        // ... and sorted in place (heap sort) afterwards.
+        for (int end = count - 1; end > 0; end--) {
+            swap(indices, sqrDistances, 0, end);
+            siftDown(indices, sqrDistances, 0, end);
+        }
+        return count;
+    }
+
+    /**
+     * Find all data points within the radius around p. Their indices (see KDTreeNode.getIndex()) are written to
+     * the buffer as long as it has space. Returns the total number of points found, which may exceed the buffer
+     * size.
+     */
+    @Override
+    public int withinRadius(Vector2f p, float radius, int[] indices) {
+        if (kdTree == null) {
+            return 0;
+        }
+        return withinRadius(p.x, p.y, radius * radius, kdTree, indices, 0);
+    }
+
+    /**
+     * Find all data points in the axis aligned rectangle ll..ur. Subtrees whose cell (KDTreeNode.getLL()/getUR())
+     * is outside the rectangle are skipped, subtrees whose cell is inside are reported without further tests.
+     * The indices (see KDTreeNode.getIndex()) are written to the buffer as long as it has space. Returns the total
+     * number of points found, which may exceed the buffer size.
+     */
+    @Override
+    public int range(Vector2f ll, Vector2f ur, int[] indices) {
+        if (kdTree == null) {
+            return 0;
+        }
+        return range(ll.x, ll.y, ur.x, ur.y, kdTree, indices, 0);
     }
 
     /**
@@ -62,43 +437,155 @@ public class NearestNeighborSearch<T> {
     }
 
     /**
-     * Internal method for getNearestNeighbor(Vector2f) searching in a given node (recursively).
+     * Internal method for kNearest(): search the subtree, the first count entries of the buffers form a max heap.
+     * Returns the new count.
      */
-    private KDTreeData<T> getNearestNeighbor(Vector2f p, KDTreeNode<T> node) {
-        // First guess: the date in the node is the closest.
-        KDTreeData<T> closest = node.getData();
-        float sqrDistRoot = p.distanceSquared(node.getData().getP());
-        float sqrBestDist = sqrDistRoot;
-
-        // Alternative: look in the child which contains p -> is there a closer data point?
-        float distanceToPlaneInDimension = node.getSplittingDirection() == KDTreeNode.SplitDirection.X ?
-                p.x - node.getData().getP().x :
-                p.y - node.getData().getP().y;
-        KDTreeNode<T> child = child = distanceToPlaneInDimension < 0 ? node.getNegChild() : node.getPosChild();
-        if (child != null) {
-            KDTreeData<T> dataChild = getNearestNeighbor(p, child);
-            float sqrDistChild = p.distanceSquared(dataChild.getP());
-            if (sqrDistChild < sqrBestDist) {
-                sqrBestDist = sqrDistChild;
-                closest = dataChild;
+    private int kNearest(float x, float y, KDTreeNode<T> node, int k, int[] indices, float[] sqrDistances,
+                         int count) {
+        Vector2f q = node.getData().getP();
+        float dx = q.x - x;
+        float dy = q.y - y;
+        float sqrDist = dx * dx + dy * dy;
+        if (count < k) {
+            // Insert and sift up
+            int i = count++;
+            indices[i] = node.getIndex();
+            sqrDistances[i] = sqrDist;
+            while (i > 0 && sqrDistances[(i - 1) / 2] < sqrDistances[i]) {
+                swap(indices, sqrDistances, i, (i - 1) / 2);
+                i = (i - 1) / 2;
             }
+        } else if (sqrDist < sqrDistances[0]) {
+            // Replace the farthest candidate
+            indices[0] = node.getIndex();
+            sqrDistances[0] = sqrDist;
+            siftDown(indices, sqrDistances, 0, count);
         }
 
-        // Alternative: look in the child which does NOT contain p -> is there a closer data point
-        // only do this if the distance to closest is larger than the distance to the separating
-        // hyperplane (otherwise all nodes are considered -> O(n) instead of O(log n)).
-        if (distanceToPlaneInDimension * distanceToPlaneInDimension < sqrBestDist) {
-            // Check other child
-            child = distanceToPlaneInDimension < 0 ? node.getPosChild() : node.getNegChild();
-            if (child != null) {
-                KDTreeData<T> dataChild = getNearestNeighbor(p, child);
-                float sqrDistChild = p.distanceSquared(dataChild.getP());
-                if (sqrDistChild < sqrBestDist) {
-                    closest = dataChild;
-                }
+        float distanceToPlane = node.getSplittingDirection() == KDTreeNode.SplitDirection.X ? x - q.x : y - q.y;
+        KDTreeNode<T> near = distanceToPlane < 0 ? node.getNegChild() : node.getPosChild();
+        KDTreeNode<T> far = distanceToPlane < 0 ? node.getPosChild() : node.getNegChild();
+        if (near != null) {
+            count = kNearest(x, y, near, k, indices, sqrDistances, count);
+        }
+        if (far != null && (count < k || distanceToPlane * distanceToPlane < sqrDistances[0])) {
+            count = kNearest(x, y, far, k, indices, sqrDistances, count);
+        }
+        return count;
+    }
+
+    /**
+     * Restore the max heap property below position i in the heap of the given size.
+     */
+    private static void siftDown(int[] indices, float[] sqrDistances, int i, int size) {
+        while (true) {
+            int largest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && sqrDistances[left] > sqrDistances[largest]) {
+                largest = left;
             }
+            if (right < size && sqrDistances[right] > sqrDistances[largest]) {
+                largest = right;
+            }
+            if (largest == i) {
+                return;
+            }
+            swap(indices, sqrDistances, i, largest);
+            i = largest;
         }
+    }
 
-        return closest;
+    private static void swap(int[] indices, float[] sqrDistances, int i, int j) {
+        int tmpIndex = indices[i];
+        indices[i] = indices[j];
+        indices[j] = tmpIndex;
+        float tmp = sqrDistances[i];
+        sqrDistances[i] = sqrDistances[j];
+        sqrDistances[j] = tmp;
+    }
+
+    /**
+     * Internal method for withinRadius(): search the subtree, skip it if its cell is farther away than the radius.
+     * Returns the new count.
+     */
+    private int withinRadius(float x, float y, float sqrRadius, KDTreeNode<T> node, int[] indices, int count) {
+        if (getSqrDistanceToCell(x, y, node) > sqrRadius) {
+            return count;
+        }
+        Vector2f q = node.getData().getP();
+        float dx = q.x - x;
+        float dy = q.y - y;
+        if (dx * dx + dy * dy <= sqrRadius) {
+            count = add(indices, count, node.getIndex());
+        }
+        if (node.getNegChild() != null) {
+            count = withinRadius(x, y, sqrRadius, node.getNegChild(), indices, count);
+        }
+        if (node.getPosChild() != null) {
+            count = withinRadius(x, y, sqrRadius, node.getPosChild(), indices, count);
+        }
+        return count;
+    }
+
+    /**
+     * Internal method for range(): search the subtree. Returns the new count.
+     */
+    private int range(float minX, float minY, float maxX, float maxY, KDTreeNode<T> node, int[] indices,
+                      int count) {
+        Vector2f ll = node.getLL();
+        Vector2f ur = node.getUR();
+        if (ll.x > maxX || ll.y > maxY || ur.x < minX || ur.y < minY) {
+            // Cell outside the rectangle
+            return count;
+        }
+        if (ll.x >= minX && ll.y >= minY && ur.x <= maxX && ur.y <= maxY) {
+            // Cell inside the rectangle
+            return addSubtree(node, indices, count);
+        }
+        Vector2f q = node.getData().getP();
+        if (q.x >= minX && q.x <= maxX && q.y >= minY && q.y <= maxY) {
+            count = add(indices, count, node.getIndex());
+        }
+        if (node.getNegChild() != null) {
+            count = range(minX, minY, maxX, maxY, node.getNegChild(), indices, count);
+        }
+        if (node.getPosChild() != null) {
+            count = range(minX, minY, maxX, maxY, node.getPosChild(), indices, count);
+        }
+        return count;
+    }
+
+    /**
+     * Add all data points of the subtree. Returns the new count.
+     */
+    private int addSubtree(KDTreeNode<T> node, int[] indices, int count) {
+        count = add(indices, count, node.getIndex());
+        if (node.getNegChild() != null) {
+            count = addSubtree(node.getNegChild(), indices, count);
+        }
+        if (node.getPosChild() != null) {
+            count = addSubtree(node.getPosChild(), indices, count);
+        }
+        return count;
+    }
+
+    /**
+     * Write the index to the buffer if it has space, returns the incremented count.
+     */
+    private static int add(int[] indices, int count, int index) {
+        if (count < indices.length) {
+            indices[count] = index;
+        }
+        return count + 1;
+    }
+
+    /**
+     * Squared distance from (x, y) to the cell of the node (0 inside).
+     */
+    private static float getSqrDistanceToCell(float x, float y, KDTreeNode<?> node) {
+        float dx = Math.max(0, Math.max(node.getLL().x - x, x - node.getUR().x));
+        float dy = Math.max(0, Math.max(node.getLL().y - y, y - node.getUR().y));
+        return dx * dx + dy * dy;
     }
-}
\ No newline at end of file
+}
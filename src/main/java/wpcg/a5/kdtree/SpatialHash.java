@@ -0,0 +1,44 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.a5.kdtree;
+
+import java.util.List;
+
+/**
+ * Spatial hash: square cells of a given size, hashed into a fixed number of buckets (power of two, at least the
+ * number of points). Unlike the uniform grid, the memory does not depend on the extent of the points, so the cell
+ * size can be chosen from the local point spacing, e.g. for clusters far apart. Cells sharing a bucket (hash
+ * collisions) only cost additional distance tests.
+ */
+public class SpatialHash<T> extends CellIndex<T> {
+
+    /**
+     * Build the hash with the default cell size (about two points per cell for uniformly distributed points).
+     */
+    public SpatialHash(List<KDTreeData<T>> points) {
+        super(points, 0);
+    }
+
+    public SpatialHash(List<KDTreeData<T>> points, float cellSize) {
+        super(points, cellSize);
+    }
+
+    @Override
+    protected int getNumberOfBuckets(int n) {
+        return Integer.highestOneBit(Math.max(16, n - 1)) << 1;
+    }
+
+    @Override
+    protected int getBucket(int cx, int cy) {
+        int hash = cx * 0x9E3779B1 + cy * 0x85EBCA77;
+        return (hash ^ (hash >>> 15)) & (numberOfBuckets - 1);
+    }
+
+    @Override
+    protected boolean isBucketExclusive() {
+        return false;
+    }
+}
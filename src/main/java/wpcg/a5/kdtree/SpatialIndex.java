@@ -0,0 +1,33 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.a5.kdtree;
+
+import com.jme3.math.Vector2f;
+
+/**
+ * Common queries of the 2D point indices over a list of data points (kd tree, uniform grid, spatial hash). Points
+ * are reported by their index in that list.
+ */
+public interface SpatialIndex<T> {
+
+    /**
+     * Find the closest data point to (x, y) and write it to the result (index, squared distance, data point and
+     * the number of visited nodes or tested points). Returns false if the index is empty.
+     */
+    boolean getNearestNeighbor(float x, float y, NearestNeighborResult<T> result);
+
+    /**
+     * Find all data points within the radius around p. Their indices are written to the buffer as long as it has
+     * space. Returns the total number of points found, which may exceed the buffer size.
+     */
+    int withinRadius(Vector2f p, float radius, int[] indices);
+
+    /**
+     * Find all data points in the axis aligned rectangle ll..ur. Their indices are written to the buffer as long
+     * as it has space. Returns the total number of points found, which may exceed the buffer size.
+     */
+    int range(Vector2f ll, Vector2f ur, int[] indices);
+}
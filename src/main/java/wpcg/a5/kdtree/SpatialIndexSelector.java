@@ -0,0 +1,157 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.a5.kdtree;
+
+import com.jme3.math.Vector2f;
+import wpcg.base.Logger;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Picks the fastest spatial index for a point set: builds a kd tree, a uniform grid and a spatial hash (cell size
+ * from the typical point spacing), runs a sample of nearest neighbor queries on each and returns the index with
+ * the lowest build time plus estimated query time. Uniformly distributed points usually favor the grid or the
+ * hash, clustered points the hash or the kd tree.
+ */
+public class SpatialIndexSelector {
+
+    /**
+     * Maximum number of sample queries per candidate.
+     */
+    private static final int MAX_SAMPLE_QUERIES = 2000;
+
+    /**
+     * Number of points used to estimate the point spacing for the cell size of the spatial hash.
+     */
+    private static final int SPACING_SAMPLES = 256;
+
+    /**
+     * Returns the index over the points with the lowest cost for the expected number of nearest neighbor
+     * queries. The sample queries are data point positions with a random offset of up to the typical point
+     * spacing, i.e. queries close to the data.
+     */
+    public static <T> SpatialIndex<T> select(List<KDTreeData<T>> points, int expectedQueries) {
+        return select(null, points, null, null, expectedQueries);
+    }
+
+    /**
+     * Like select(points, expectedQueries), but reuses a kd tree already built over the points (e.g. with
+     * KDTreeBuilder) as the kd tree candidate, without build cost.
+     */
+    public static <T> SpatialIndex<T> select(KDTreeNode<T> kdTree, List<KDTreeData<T>> points,
+                                             int expectedQueries) {
+        return select(kdTree, points, null, null, expectedQueries);
+    }
+
+    /**
+     * Returns the index over the points with the lowest cost for the expected number of nearest neighbor
+     * queries, measured with the given sample query positions (null: queries close to the data points).
+     */
+    public static <T> SpatialIndex<T> select(List<KDTreeData<T>> points, float[] queryXs, float[] queryYs,
+                                             int expectedQueries) {
+        return select(null, points, queryXs, queryYs, expectedQueries);
+    }
+
+    /**
+     * Implementation of the selection, builds the kd tree if tree is null.
+     */
+    private static <T> SpatialIndex<T> select(KDTreeNode<T> tree, List<KDTreeData<T>> points, float[] queryXs,
+                                              float[] queryYs, int expectedQueries) {
+        long start = System.nanoTime();
+        NearestNeighborSearch<T> kdTree = new NearestNeighborSearch<>(
+                tree != null ? tree : new KDTreeBuilder<T>().build(points), points);
+        long kdTreeBuildTime = System.nanoTime() - start;
+        float spacing = getSpacing(kdTree, points);
+        if (queryXs == null || queryYs == null) {
+            queryXs = new float[Math.max(1, Math.min(expectedQueries, MAX_SAMPLE_QUERIES))];
+            queryYs = new float[queryXs.length];
+            createSampleQueries(points, spacing, queryXs, queryYs);
+        }
+
+        // Candidates are aborted as soon as they are more expensive than the best one so far
+        SpatialIndex<T> best = kdTree;
+        double bestCost = getCost(kdTree, kdTreeBuildTime, queryXs, queryYs, expectedQueries,
+                Double.POSITIVE_INFINITY);
+        start = System.nanoTime();
+        UniformGrid<T> grid = new UniformGrid<>(points);
+        double gridCost = getCost(grid, System.nanoTime() - start, queryXs, queryYs, expectedQueries, bestCost);
+        if (gridCost < bestCost) {
+            best = grid;
+            bestCost = gridCost;
+        }
+        start = System.nanoTime();
+        SpatialHash<T> hash = new SpatialHash<>(points, 2 * spacing);
+        double hashCost = getCost(hash, System.nanoTime() - start, queryXs, queryYs, expectedQueries, bestCost);
+        if (hashCost < bestCost) {
+            best = hash;
+            bestCost = hashCost;
+        }
+        Logger.getInstance().debug(String.format("Selected %s for %d points and %d queries (%.2f ms)",
+                best.getClass().getSimpleName(), points.size(), expectedQueries, bestCost / 1e6));
+        return best;
+    }
+
+    /**
+     * Build time plus the measured query time extrapolated to the expected number of queries (in ns). The sample
+     * queries run twice, only the second run is measured. Returns infinity as soon as the cost exceeds maxCost.
+     */
+    private static <T> double getCost(SpatialIndex<T> index, long buildTime, float[] xs, float[] ys,
+                                      int expectedQueries, double maxCost) {
+        NearestNeighborResult<T> result = new NearestNeighborResult<>();
+        double timeScale = (double) expectedQueries / xs.length;
+        long queryTime = 0;
+        for (int run = 0; run < 2; run++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < xs.length; i++) {
+                index.getNearestNeighbor(xs[i], ys[i], result);
+                if (buildTime + (System.nanoTime() - start) * timeScale > maxCost) {
+                    return Double.POSITIVE_INFINITY;
+                }
+            }
+            queryTime = System.nanoTime() - start;
+        }
+        return buildTime + queryTime * timeScale;
+    }
+
+    /**
+     * Typical point spacing: the median distance of sample points to their nearest neighbor, which follows the
+     * local density of clustered points. 0 for less than two points.
+     */
+    private static <T> float getSpacing(NearestNeighborSearch<T> kdTree, List<KDTreeData<T>> points) {
+        if (points.size() < 2) {
+            return 0;
+        }
+        Random random = new Random(points.size());
+        float[] spacings = new float[Math.min(SPACING_SAMPLES, points.size())];
+        int[] indices = new int[2];
+        float[] sqrDistances = new float[2];
+        for (int i = 0; i < spacings.length; i++) {
+            Vector2f p = points.get(random.nextInt(points.size())).getP();
+            kdTree.kNearest(p, 2, indices, sqrDistances);
+            spacings[i] = (float) Math.sqrt(sqrDistances[1]);
+        }
+        Arrays.sort(spacings);
+        return spacings[spacings.length / 2];
+    }
+
+    /**
+     * Fill the sample query positions: random data points, moved by up to the spacing in each direction.
+     */
+    private static <T> void createSampleQueries(List<KDTreeData<T>> points, float spacing, float[] xs,
+                                                float[] ys) {
+        Random random = new Random(points.size());
+        for (int i = 0; i < xs.length; i++) {
+            if (points.isEmpty()) {
+                continue;
+            }
+            Vector2f p = points.get(random.nextInt(points.size())).getP();
+            xs[i] = p.x + (2 * random.nextFloat() - 1) * spacing;
+            ys[i] = p.y + (2 * random.nextFloat() - 1) * spacing;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.a5.kdtree;
+
+import java.util.List;
+
+/**
+ * Uniform grid over the bounding box of the points with about two points per cell, one bucket per cell. Built in
+ * linear time, a nearest neighbor query for uniformly distributed points only looks at a few cells. Clustered
+ * points leave most cells empty and fill a few cells with many points, a kd tree is better then.
+ */
+public class UniformGrid<T> extends CellIndex<T> {
+
+    public UniformGrid(List<KDTreeData<T>> points) {
+        super(points, 0);
+    }
+
+    @Override
+    protected int getNumberOfBuckets(int n) {
+        return numberOfCellsX * numberOfCellsY;
+    }
+
+    @Override
+    protected int getBucket(int cx, int cy) {
+        return cy * numberOfCellsX + cx;
+    }
+
+    @Override
+    protected boolean isBucketExclusive() {
+        return true;
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from primitive long keys to non-negative primitive int values. Open addressing with linear probing, no
+ * boxing, no entry objects. Used for packed keys like grid cells or (start, end) vertex index pairs.
+ */
+public class LongIntHashMap {
+
+    /**
+     * Returned by get() if the key is not contained in the map.
+     */
+    public static final int NO_VALUE = -1;
+
+    /**
+     * Keys of the slots.
+     */
+    private long[] keys;
+
+    /**
+     * Values of the slots, NO_VALUE marks an empty slot.
+     */
+    private int[] values;
+
+    /**
+     * Number of entries in the map.
+     */
+    private int size;
+
+    /**
+     * Bit mask to map a hash value to a slot index (capacity - 1).
+     */
+    private int mask;
+
+    public LongIntHashMap() {
+        this(16);
+    }
+
+    /**
+     * Creates a map which can hold the expected number of entries without rehashing.
+     */
+    public LongIntHashMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Returns the value for the key or NO_VALUE if the key is not contained.
+     */
+    public int get(long key) {
+        int slot = hash(key) & mask;
+        while (values[slot] != NO_VALUE) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NO_VALUE;
+    }
+
+    /**
+     * Sets the value for the key, returns the previous value or NO_VALUE. The value must not be negative.
+     */
+    public int put(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Values must not be negative.");
+        }
+        int slot = hash(key) & mask;
+        while (values[slot] != NO_VALUE) {
+            if (keys[slot] == key) {
+                int previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        if (size * 2 > values.length) {
+            rehash(values.length * 2);
+        }
+        return NO_VALUE;
+    }
+
+    /**
+     * Returns true if the key is contained in the map.
+     */
+    public boolean containsKey(long key) {
+        return get(key) != NO_VALUE;
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public void clear() {
+        Arrays.fill(values, NO_VALUE);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Pack two int values into one long key.
+     */
+    public static long pack(int high, int low) {
+        return ((long) high << 32) | (low & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Mix the bits of the key (finalizer of MurmurHash3), packed keys differ mostly in the lower bits per half.
+     */
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    /**
+     * Smallest power of two capacity which keeps the load factor for the expected size below 0.5.
+     */
+    private static int capacityFor(int expectedSize) {
+        int capacity = 16;
+        while (capacity < 2L * expectedSize + 1) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, NO_VALUE);
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != NO_VALUE) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (values[slot] != NO_VALUE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                size++;
+            }
+        }
+    }
+}
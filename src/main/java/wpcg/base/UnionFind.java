@@ -0,0 +1,84 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base;
+
+/**
+ * Disjoint sets over the elements 0..n-1 (union by size, path halving). All operations run in near constant
+ * amortized time.
+ */
+public class UnionFind {
+
+    /**
+     * Parent of each element, roots are their own parent.
+     */
+    private final int[] parent;
+
+    /**
+     * Size of the set for each root.
+     */
+    private final int[] size;
+
+    /**
+     * Number of disjoint sets.
+     */
+    private int numberOfSets;
+
+    public UnionFind(int numberOfElements) {
+        parent = new int[numberOfElements];
+        size = new int[numberOfElements];
+        for (int i = 0; i < numberOfElements; i++) {
+            parent[i] = i;
+            size[i] = 1;
+        }
+        numberOfSets = numberOfElements;
+    }
+
+    /**
+     * Returns the representative (root) of the set containing the element.
+     */
+    public int find(int element) {
+        while (parent[element] != element) {
+            parent[element] = parent[parent[element]];
+            element = parent[element];
+        }
+        return element;
+    }
+
+    /**
+     * Merge the sets containing a and b. Returns false if they already were the same set.
+     */
+    public boolean union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB) {
+            return false;
+        }
+        if (size[rootA] < size[rootB]) {
+            int tmp = rootA;
+            rootA = rootB;
+            rootB = tmp;
+        }
+        parent[rootB] = rootA;
+        size[rootA] += size[rootB];
+        numberOfSets--;
+        return true;
+    }
+
+    /**
+     * Number of elements in the set containing the element.
+     */
+    public int getSetSize(int element) {
+        return size[find(element)];
+    }
+
+    public int getNumberOfSets() {
+        return numberOfSets;
+    }
+
+    public int getNumberOfElements() {
+        return parent.length;
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * Precomputed adjacency of an indexed triangle mesh in compressed sparse row (CSR) layout: vertex -> faces,
+ * vertex -> vertices (one-ring) and face -> faces (across the three edges).
+ * <p>
+ * The neighbors of vertex v are stored in getVertexNeighbors()[getVertexNeighborsStart(v) ..
+ * getVertexNeighborsEnd(v) - 1] (same for the faces), so neighborhood based operators can loop over flat arrays.
+ * All lists are sorted by index. Construction is O(n): a parallel counting pass, a prefix sum and a parallel
+ * fill pass.
+ */
+public class MeshAdjacency {
+
+    /**
+     * Marks a missing neighbor face (boundary edge).
+     */
+    public static final int NONE = -1;
+
+    /**
+     * Triangles, 3 vertex indices per triangle.
+     */
+    private final int[] triangleIndices;
+
+    /**
+     * Faces adjacent to vertex v: vertexFaces[vertexFaceOffsets[v] .. vertexFaceOffsets[v + 1] - 1].
+     */
+    private final int[] vertexFaceOffsets;
+    private final int[] vertexFaces;
+
+    /**
+     * Neighbor vertices of vertex v: vertexNeighbors[vertexNeighborOffsets[v] .. vertexNeighborOffsets[v + 1] - 1].
+     */
+    private final int[] vertexNeighborOffsets;
+    private final int[] vertexNeighbors;
+
+    /**
+     * Neighbor face across edge k (corner k to corner k + 1) of face f: faceNeighbors[3 * f + k], NONE at the
+     * boundary.
+     */
+    private final int[] faceNeighbors;
+
+    private MeshAdjacency(int numberOfVertices, int[] triangleIndices) {
+        this.triangleIndices = triangleIndices;
+        int numberOfTriangles = triangleIndices.length / 3;
+
+        // Vertex -> faces: count, prefix sum, fill, sort
+        vertexFaceOffsets = new int[numberOfVertices + 1];
+        AtomicIntegerArray counter = new AtomicIntegerArray(numberOfVertices);
+        IntStream.range(0, triangleIndices.length).parallel().forEach(i -> counter.incrementAndGet(triangleIndices[i]));
+        for (int v = 0; v < numberOfVertices; v++) {
+            vertexFaceOffsets[v + 1] = vertexFaceOffsets[v] + counter.get(v);
+            counter.set(v, vertexFaceOffsets[v]);
+        }
+        vertexFaces = new int[triangleIndices.length];
+        IntStream.range(0, triangleIndices.length).parallel().forEach(
+                i -> vertexFaces[counter.getAndIncrement(triangleIndices[i])] = i / 3);
+        IntStream.range(0, numberOfVertices).parallel().forEach(
+                v -> Arrays.sort(vertexFaces, vertexFaceOffsets[v], vertexFaceOffsets[v + 1]));
+
+        // Vertex -> vertices: count unique neighbors, prefix sum, fill
+        vertexNeighborOffsets = new int[numberOfVertices + 1];
+        int[] numberOfNeighbors = new int[numberOfVertices];
+        IntStream.range(0, numberOfVertices).parallel().forEach(
+                v -> numberOfNeighbors[v] = collectNeighbors(v, null, 0));
+        for (int v = 0; v < numberOfVertices; v++) {
+            vertexNeighborOffsets[v + 1] = vertexNeighborOffsets[v] + numberOfNeighbors[v];
+        }
+        vertexNeighbors = new int[vertexNeighborOffsets[numberOfVertices]];
+        IntStream.range(0, numberOfVertices).parallel().forEach(
+                v -> collectNeighbors(v, vertexNeighbors, vertexNeighborOffsets[v]));
+
+        // Face -> faces: the other face adjacent to both end points of the edge
+        faceNeighbors = new int[3 * numberOfTriangles];
+        IntStream.range(0, numberOfTriangles).parallel().forEach(f -> {
+            for (int k = 0; k < 3; k++) {
+                int a = triangleIndices[3 * f + k];
+                int b = triangleIndices[3 * f + (k + 1) % 3];
+                faceNeighbors[3 * f + k] = findFace(a, b, f);
+            }
+        });
+    }
+
+    /**
+     * Compute the adjacency for a mesh with the given number of vertices and triangles (3 vertex indices per
+     * triangle).
+     */
+    public static MeshAdjacency from(int numberOfVertices, int[] triangleIndices) {
+        return new MeshAdjacency(numberOfVertices, triangleIndices);
+    }
+
+    /**
+     * Compute the adjacency of the mesh.
+     */
+    public static MeshAdjacency from(TriangleMesh mesh) {
+        return new MeshAdjacency(mesh.getNumberOfVertices(), mesh.getTriangleIndexArray());
+    }
+
+    /**
+     * Collect the sorted, unique neighbors of v. Writes them to target[offset..] if target is not null, returns
+     * the number of neighbors.
+     */
+    private int collectNeighbors(int v, int[] target, int offset) {
+        int start = vertexFaceOffsets[v];
+        int end = vertexFaceOffsets[v + 1];
+        int[] candidates = new int[2 * (end - start)];
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            int f = vertexFaces[i];
+            for (int k = 0; k < 3; k++) {
+                int w = triangleIndices[3 * f + k];
+                if (w != v) {
+                    candidates[count++] = w;
+                }
+            }
+        }
+        Arrays.sort(candidates, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || candidates[i] != candidates[i - 1]) {
+                if (target != null) {
+                    target[offset + unique] = candidates[i];
+                }
+                unique++;
+            }
+        }
+        return unique;
+    }
+
+    /**
+     * Find a face other than exclude which contains the vertices a and b, NONE if there is none.
+     */
+    private int findFace(int a, int b, int exclude) {
+        for (int i = vertexFaceOffsets[a]; i < vertexFaceOffsets[a + 1]; i++) {
+            int f = vertexFaces[i];
+            if (f != exclude && (triangleIndices[3 * f] == b || triangleIndices[3 * f + 1] == b
+                    || triangleIndices[3 * f + 2] == b)) {
+                return f;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Returns true if the vertex is at the boundary: in a closed fan the number of neighbors equals the number of
+     * faces.
+     */
+    public boolean isBoundaryVertex(int v) {
+        return getValence(v) != getNumberOfVertexFaces(v);
+    }
+
+    // +++ GETTER/SETTER +++++++++++++++++++++++++
+
+    public int getNumberOfVertices() {
+        return vertexFaceOffsets.length - 1;
+    }
+
+    public int getNumberOfTriangles() {
+        return triangleIndices.length / 3;
+    }
+
+    public int getTriangleVertex(int face, int corner) {
+        return triangleIndices[3 * face + corner];
+    }
+
+    public int[] getVertexFaces() {
+        return vertexFaces;
+    }
+
+    public int getVertexFacesStart(int v) {
+        return vertexFaceOffsets[v];
+    }
+
+    public int getVertexFacesEnd(int v) {
+        return vertexFaceOffsets[v + 1];
+    }
+
+    public int getNumberOfVertexFaces(int v) {
+        return vertexFaceOffsets[v + 1] - vertexFaceOffsets[v];
+    }
+
+    public int[] getVertexNeighbors() {
+        return vertexNeighbors;
+    }
+
+    public int getVertexNeighborsStart(int v) {
+        return vertexNeighborOffsets[v];
+    }
+
+    public int getVertexNeighborsEnd(int v) {
+        return vertexNeighborOffsets[v + 1];
+    }
+
+    /**
+     * Number of neighbor vertices.
+     */
+    public int getValence(int v) {
+        return vertexNeighborOffsets[v + 1] - vertexNeighborOffsets[v];
+    }
+
+    /**
+     * Neighbor face across edge k (corner k to corner k + 1) of the face, NONE at the boundary.
+     */
+    public int getNeighborFace(int face, int k) {
+        return faceNeighbors[3 * face + k];
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.Vector3f;
+
+/**
+ * Axis aligned bounds which can be extended point by point and translated in O(1). Used to keep the bounding
+ * box of a mesh up to date incrementally.
+ */
+public class MeshBounds {
+
+    /**
+     * Lower corner.
+     */
+    private float minX, minY, minZ;
+
+    /**
+     * Upper corner.
+     */
+    private float maxX, maxY, maxZ;
+
+    public MeshBounds() {
+        clear();
+    }
+
+    public MeshBounds(MeshBounds bounds) {
+        minX = bounds.minX;
+        minY = bounds.minY;
+        minZ = bounds.minZ;
+        maxX = bounds.maxX;
+        maxY = bounds.maxY;
+        maxZ = bounds.maxZ;
+    }
+
+    /**
+     * Reset to empty bounds.
+     */
+    public void clear() {
+        minX = minY = minZ = Float.POSITIVE_INFINITY;
+        maxX = maxY = maxZ = Float.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Extend the bounds to contain the point (x, y, z).
+     */
+    public void include(float x, float y, float z) {
+        minX = Math.min(minX, x);
+        minY = Math.min(minY, y);
+        minZ = Math.min(minZ, z);
+        maxX = Math.max(maxX, x);
+        maxY = Math.max(maxY, y);
+        maxZ = Math.max(maxZ, z);
+    }
+
+    /**
+     * Extend the bounds to contain the point p.
+     */
+    public void include(Vector3f p) {
+        include(p.x, p.y, p.z);
+    }
+
+    /**
+     * Move the bounds by the offset (x, y, z).
+     */
+    public void translate(float x, float y, float z) {
+        minX += x;
+        minY += y;
+        minZ += z;
+        maxX += x;
+        maxY += y;
+        maxZ += z;
+    }
+
+    /**
+     * Returns true if no point was included so far.
+     */
+    public boolean isEmpty() {
+        return minX > maxX;
+    }
+
+    /**
+     * Returns the bounds as jME bounding box (empty bounds result in an empty box at the origin).
+     */
+    public BoundingBox toBoundingBox() {
+        if (isEmpty()) {
+            return new BoundingBox(new Vector3f(0, 0, 0), 0, 0, 0);
+        }
+        return new BoundingBox(new Vector3f(minX, minY, minZ), new Vector3f(maxX, maxY, maxZ));
+    }
+
+    @Override
+    public String toString() {
+        return "MeshBounds[(" + minX + ", " + minY + ", " + minZ + ") - (" + maxX + ", " + maxY + ", " + maxZ + ")]";
+    }
+
+    // +++ GETTER/SETTER +++++++++++++++++++++++++
+
+    public float getMinX() {
+        return minX;
+    }
+
+    public float getMinY() {
+        return minY;
+    }
+
+    public float getMinZ() {
+        return minZ;
+    }
+
+    public float getMaxX() {
+        return maxX;
+    }
+
+    public float getMaxY() {
+        return maxY;
+    }
+
+    public float getMaxZ() {
+        return maxZ;
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Triangle and vertex normals of an indexed triangle mesh, computed on flat arrays.
+ * <p>
+ * The triangles are processed in parallel chunks. Each chunk scatters its (area weighted) triangle normals into a
+ * private vertex normal buffer, so no two threads ever write the same value. The buffers are summed up and
+ * normalized in a second parallel pass over the vertices.
+ */
+public class MeshNormals {
+
+    /**
+     * Meshes with less triangles are processed in a single chunk.
+     */
+    private static final int MIN_TRIANGLES_PER_CHUNK = 16384;
+
+    /**
+     * Triangle normals, 3 floats (x, y, z) per triangle.
+     */
+    private final float[] triangleNormals;
+
+    /**
+     * Vertex normals, 3 floats (x, y, z) per vertex.
+     */
+    private final float[] vertexNormals;
+
+    /**
+     * Number of triangles for which no normal could be computed (area 0).
+     */
+    private int numberOfInvalidTriangles;
+
+    private MeshNormals(int numberOfTriangles, int numberOfVertices) {
+        triangleNormals = new float[3 * numberOfTriangles];
+        vertexNormals = new float[3 * numberOfVertices];
+        numberOfInvalidTriangles = 0;
+    }
+
+    /**
+     * Compute the normals for the given positions (3 floats per vertex) and triangles (3 vertex indices per
+     * triangle).
+     */
+    public static MeshNormals compute(float[] positions, int[] triangleIndices) {
+        int numberOfTriangles = triangleIndices.length / 3;
+        int numberOfVertices = positions.length / 3;
+        MeshNormals normals = new MeshNormals(numberOfTriangles, numberOfVertices);
+        int numberOfChunks = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(),
+                numberOfTriangles / MIN_TRIANGLES_PER_CHUNK));
+        int chunkSize = (numberOfTriangles + numberOfChunks - 1) / numberOfChunks;
+
+        // Pass 1: triangle normals, scattered into one vertex normal accumulator per chunk.
+        float[][] accumulators = new float[numberOfChunks][];
+        int[] invalid = new int[numberOfChunks];
+        IntStream.range(0, numberOfChunks).parallel().forEach(chunk -> {
+            float[] accumulator = chunk == 0 ? normals.vertexNormals : new float[3 * numberOfVertices];
+            accumulators[chunk] = accumulator;
+            int end = Math.min(numberOfTriangles, (chunk + 1) * chunkSize);
+            for (int t = chunk * chunkSize; t < end; t++) {
+                int a = 3 * triangleIndices[3 * t];
+                int b = 3 * triangleIndices[3 * t + 1];
+                int c = 3 * triangleIndices[3 * t + 2];
+                float ux = positions[b] - positions[a];
+                float uy = positions[b + 1] - positions[a + 1];
+                float uz = positions[b + 2] - positions[a + 2];
+                float vx = positions[c] - positions[a];
+                float vy = positions[c + 1] - positions[a + 1];
+                float vz = positions[c + 2] - positions[a + 2];
+                // Length of the cross product is twice the area -> area weighted vertex normals
+                float nx = uy * vz - uz * vy;
+                float ny = uz * vx - ux * vz;
+                float nz = ux * vy - uy * vx;
+                accumulator[a] += nx;
+                accumulator[a + 1] += ny;
+                accumulator[a + 2] += nz;
+                accumulator[b] += nx;
+                accumulator[b + 1] += ny;
+                accumulator[b + 2] += nz;
+                accumulator[c] += nx;
+                accumulator[c + 1] += ny;
+                accumulator[c + 2] += nz;
+                float norm = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+                if (norm > 1e-8) {
+                    nx /= norm;
+                    ny /= norm;
+                    nz /= norm;
+                } else {
+                    invalid[chunk]++;
+                }
+                normals.triangleNormals[3 * t] = nx;
+                normals.triangleNormals[3 * t + 1] = ny;
+                normals.triangleNormals[3 * t + 2] = nz;
+            }
+        });
+        for (int count : invalid) {
+            normals.numberOfInvalidTriangles += count;
+        }
+
+        // Pass 2: reduce the accumulators into the first one and normalize.
+        IntStream.range(0, numberOfVertices).parallel().forEach(v -> {
+            float nx = 0, ny = 0, nz = 0;
+            for (float[] accumulator : accumulators) {
+                nx += accumulator[3 * v];
+                ny += accumulator[3 * v + 1];
+                nz += accumulator[3 * v + 2];
+            }
+            float norm = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (norm > 1e-8) {
+                normals.vertexNormals[3 * v] = nx / norm;
+                normals.vertexNormals[3 * v + 1] = ny / norm;
+                normals.vertexNormals[3 * v + 2] = nz / norm;
+            } else {
+                // Unreferenced vertex: keep the default normal of the Vertex class.
+                normals.vertexNormals[3 * v] = 0;
+                normals.vertexNormals[3 * v + 1] = 1;
+                normals.vertexNormals[3 * v + 2] = 0;
+            }
+        });
+        return normals;
+    }
+
+    // +++ GETTER/SETTER +++++++++++++++++++++++++
+
+    public float[] getTriangleNormals() {
+        return triangleNormals;
+    }
+
+    public float[] getVertexNormals() {
+        return vertexNormals;
+    }
+
+    public int getNumberOfInvalidTriangles() {
+        return numberOfInvalidTriangles;
+    }
+}
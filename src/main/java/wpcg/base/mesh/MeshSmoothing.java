@@ -0,0 +1,187 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import wpcg.base.Logger;
+
+import java.util.stream.IntStream;
+
+/**
+ * Laplacian and Taubin (lambda/mu) smoothing of an indexed triangle mesh.
+ * <p>
+ * Each step moves every vertex by factor * (weighted average of its neighbors - vertex). The positions are double
+ * buffered: a step reads only the source buffer and writes only the target buffer, so all vertices are processed
+ * in parallel. Boundary vertices are kept in place.
+ */
+public class MeshSmoothing {
+
+    /**
+     * Weights of the neighbors in the Laplacian.
+     */
+    public enum Weights {
+        /**
+         * All neighbors have the same weight.
+         */
+        UNIFORM,
+        /**
+         * Cotangent weights: sum of the cotangents of the angles opposite the edge (clamped to non-negative
+         * values). Reduces tangential drift on irregular meshes.
+         */
+        COTANGENT
+    }
+
+    /**
+     * Default parameters for Taubin smoothing.
+     */
+    public static final float DEFAULT_LAMBDA = 0.5f;
+    public static final float DEFAULT_MU = -0.53f;
+
+    /**
+     * Weighting scheme.
+     */
+    private final Weights weights;
+
+    public MeshSmoothing(Weights weights) {
+        this.weights = weights;
+    }
+
+    /**
+     * Plain Laplacian smoothing: iterations steps with factor lambda (0..1). Shrinks the mesh.
+     */
+    public void laplacian(TriangleMesh mesh, float lambda, int iterations) {
+        smooth(mesh, new float[]{lambda}, iterations);
+    }
+
+    /**
+     * Taubin smoothing: each iteration is a shrinking step (lambda > 0) followed by an inflating step
+     * (mu < -lambda), so the volume is approximately preserved.
+     */
+    public void taubin(TriangleMesh mesh, float lambda, float mu, int iterations) {
+        smooth(mesh, new float[]{lambda, mu}, iterations);
+    }
+
+    /**
+     * Apply the steps with the given factors iterations times and write the result to the mesh.
+     */
+    private void smooth(TriangleMesh mesh, float[] factors, int iterations) {
+        MeshAdjacency adjacency = MeshAdjacency.from(mesh);
+        int numberOfVertices = mesh.getNumberOfVertices();
+        float[] source = mesh.getPositionArray();
+        float[] target = new float[source.length];
+        boolean[] fixed = new boolean[numberOfVertices];
+        IntStream.range(0, numberOfVertices).parallel().forEach(
+                v -> fixed[v] = adjacency.isBoundaryVertex(v) || adjacency.getValence(v) == 0);
+
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            for (float factor : factors) {
+                float[] from = source;
+                float[] to = target;
+                IntStream.range(0, numberOfVertices).parallel().forEach(
+                        v -> step(adjacency, from, to, v, fixed[v] ? 0 : factor));
+                target = source;
+                source = to;
+            }
+        }
+
+        float[] positions = source;
+        IntStream.range(0, numberOfVertices).parallel().forEach(v -> mesh.getVertex(v).getPosition().set(
+                positions[3 * v], positions[3 * v + 1], positions[3 * v + 2]));
+        mesh.positionsChanged();
+        mesh.computeTriangleNormals();
+        Logger.getInstance().debug("Smoothed mesh with " + numberOfVertices + " vertices (" + iterations
+                + " iterations, " + weights + " weights).");
+    }
+
+    /**
+     * Compute the new position of vertex v from the positions in from and write it to to.
+     */
+    private void step(MeshAdjacency adjacency, float[] from, float[] to, int v, float factor) {
+        if (factor == 0) {
+            to[3 * v] = from[3 * v];
+            to[3 * v + 1] = from[3 * v + 1];
+            to[3 * v + 2] = from[3 * v + 2];
+            return;
+        }
+        // Laplacian into to[3v..3v+2], then the actual step
+        if (weights != Weights.COTANGENT || !computeCotangentLaplacian(adjacency, from, v, to)) {
+            computeUniformLaplacian(adjacency, from, v, to);
+        }
+        to[3 * v] = from[3 * v] + factor * to[3 * v];
+        to[3 * v + 1] = from[3 * v + 1] + factor * to[3 * v + 1];
+        to[3 * v + 2] = from[3 * v + 2] + factor * to[3 * v + 2];
+    }
+
+    /**
+     * Average of the neighbors minus the vertex, written to laplacian[3v..3v+2].
+     */
+    private void computeUniformLaplacian(MeshAdjacency adjacency, float[] positions, int v, float[] laplacian) {
+        int[] neighbors = adjacency.getVertexNeighbors();
+        int start = adjacency.getVertexNeighborsStart(v);
+        int end = adjacency.getVertexNeighborsEnd(v);
+        float x = 0, y = 0, z = 0;
+        for (int i = start; i < end; i++) {
+            int w = neighbors[i];
+            x += positions[3 * w];
+            y += positions[3 * w + 1];
+            z += positions[3 * w + 2];
+        }
+        int n = end - start;
+        laplacian[3 * v] = x / n - positions[3 * v];
+        laplacian[3 * v + 1] = y / n - positions[3 * v + 1];
+        laplacian[3 * v + 2] = z / n - positions[3 * v + 2];
+    }
+
+    /**
+     * Cotangent weighted average of the neighbors minus the vertex, written to laplacian[3v..3v+2]. Returns false
+     * if the weights vanish (e.g. only obtuse angles), the caller falls back to uniform weights then.
+     */
+    private boolean computeCotangentLaplacian(MeshAdjacency adjacency, float[] positions, int v,
+                                              float[] laplacian) {
+        int[] faces = adjacency.getVertexFaces();
+        float x = 0, y = 0, z = 0, weightSum = 0;
+        for (int i = adjacency.getVertexFacesStart(v); i < adjacency.getVertexFacesEnd(v); i++) {
+            int f = faces[i];
+            int corner = adjacency.getTriangleVertex(f, 0) == v ? 0
+                    : (adjacency.getTriangleVertex(f, 1) == v ? 1 : 2);
+            int a = adjacency.getTriangleVertex(f, (corner + 1) % 3);
+            int b = adjacency.getTriangleVertex(f, (corner + 2) % 3);
+            // Angle at b is opposite the edge (v, a), angle at a is opposite the edge (v, b).
+            float weightA = Math.max(0, cotangent(positions, b, v, a));
+            float weightB = Math.max(0, cotangent(positions, a, v, b));
+            x += weightA * (positions[3 * a] - positions[3 * v]) + weightB * (positions[3 * b] - positions[3 * v]);
+            y += weightA * (positions[3 * a + 1] - positions[3 * v + 1])
+                    + weightB * (positions[3 * b + 1] - positions[3 * v + 1]);
+            z += weightA * (positions[3 * a + 2] - positions[3 * v + 2])
+                    + weightB * (positions[3 * b + 2] - positions[3 * v + 2]);
+            weightSum += weightA + weightB;
+        }
+        if (weightSum < 1e-8) {
+            return false;
+        }
+        laplacian[3 * v] = x / weightSum;
+        laplacian[3 * v + 1] = y / weightSum;
+        laplacian[3 * v + 2] = z / weightSum;
+        return true;
+    }
+
+    /**
+     * Cotangent of the angle at vertex c in the triangle (c, p, q).
+     */
+    private static float cotangent(float[] positions, int c, int p, int q) {
+        float ux = positions[3 * p] - positions[3 * c];
+        float uy = positions[3 * p + 1] - positions[3 * c + 1];
+        float uz = positions[3 * p + 2] - positions[3 * c + 2];
+        float vx = positions[3 * q] - positions[3 * c];
+        float vy = positions[3 * q + 1] - positions[3 * c + 1];
+        float vz = positions[3 * q + 2] - positions[3 * c + 2];
+        float dot = ux * vx + uy * vy + uz * vz;
+        float cx = uy * vz - uz * vy;
+        float cy = uz * vx - ux * vz;
+        float cz = ux * vy - uy * vx;
+        float cross = (float) Math.sqrt(cx * cx + cy * cy + cz * cz);
+        return cross > 1e-12f ? dot / cross : 0;
+    }
+}
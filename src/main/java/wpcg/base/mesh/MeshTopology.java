@@ -0,0 +1,277 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import wpcg.base.LongIntHashMap;
+import wpcg.base.UnionFind;
+
+/**
+ * Topology report of an indexed triangle mesh: boundary, manifoldness, orientation, connected components and
+ * genus.
+ * <p>
+ * All half edges are inserted into one hash map over the undirected edge (packed vertex index pair) in a single
+ * pass. Each edge counts its faces (1: boundary, 2: manifold, more: non-manifold) and checks the orientation of
+ * its second half edge. Faces sharing an edge are united into components, corners of the same vertex sharing a
+ * manifold edge are united into fans (a vertex with more than one fan is non-manifold) and the vertices of
+ * boundary edges are united into boundary loops. Everything is O(n).
+ */
+public class MeshTopology {
+
+    /**
+     * Number of (undirected) edges.
+     */
+    private int numberOfEdges;
+
+    /**
+     * Edges with exactly one adjacent face.
+     */
+    private int numberOfBoundaryEdges;
+
+    /**
+     * Number of closed boundary curves.
+     */
+    private int numberOfBoundaryLoops;
+
+    /**
+     * Edges with more than two adjacent faces.
+     */
+    private int numberOfNonManifoldEdges;
+
+    /**
+     * Vertices whose adjacent faces do not form a single fan.
+     */
+    private int numberOfNonManifoldVertices;
+
+    /**
+     * Edges where both adjacent faces traverse the edge in the same direction.
+     */
+    private int numberOfInconsistentEdges;
+
+    /**
+     * Number of vertices used by at least one triangle.
+     */
+    private int numberOfReferencedVertices;
+
+    /**
+     * Number of triangles.
+     */
+    private int numberOfTriangles;
+
+    /**
+     * Number of connected components (over shared edges).
+     */
+    private int numberOfComponents;
+
+    /**
+     * Component index (0..numberOfComponents - 1) for each triangle.
+     */
+    private int[] triangleComponents;
+
+    private MeshTopology() {
+    }
+
+    /**
+     * Analyze the mesh with the given number of vertices and triangles (3 vertex indices per triangle).
+     */
+    public static MeshTopology from(int numberOfVertices, int[] triangleIndices) {
+        MeshTopology topology = new MeshTopology();
+        topology.analyze(numberOfVertices, triangleIndices);
+        return topology;
+    }
+
+    /**
+     * Analyze the mesh.
+     */
+    public static MeshTopology from(TriangleMesh mesh) {
+        return from(mesh.getNumberOfVertices(), mesh.getTriangleIndexArray());
+    }
+
+    private void analyze(int numberOfVertices, int[] triangleIndices) {
+        int numberOfHalfEdges = triangleIndices.length;
+        numberOfTriangles = numberOfHalfEdges / 3;
+        LongIntHashMap edgeMap = new LongIntHashMap(numberOfHalfEdges / 2);
+        int[] edgeFaceCount = new int[numberOfHalfEdges];
+        int[] edgeFirstHalfEdge = new int[numberOfHalfEdges];
+        UnionFind faces = new UnionFind(numberOfTriangles);
+        UnionFind corners = new UnionFind(numberOfHalfEdges);
+
+        // Single pass over all half edges
+        for (int he = 0; he < numberOfHalfEdges; he++) {
+            int a = triangleIndices[he];
+            int b = triangleIndices[next(he)];
+            if (a == b) {
+                continue;
+            }
+            long key = LongIntHashMap.pack(Math.min(a, b), Math.max(a, b));
+            int edge = edgeMap.get(key);
+            if (edge == LongIntHashMap.NO_VALUE) {
+                edge = numberOfEdges++;
+                edgeMap.put(key, edge);
+                edgeFirstHalfEdge[edge] = he;
+                edgeFaceCount[edge] = 1;
+                continue;
+            }
+            int first = edgeFirstHalfEdge[edge];
+            edgeFaceCount[edge]++;
+            faces.union(first / 3, he / 3);
+            if (edgeFaceCount[edge] == 2) {
+                boolean sameDirection = triangleIndices[first] == a;
+                if (sameDirection) {
+                    numberOfInconsistentEdges++;
+                }
+                // Corner of a and b in the first face are first and next(first) (or swapped)
+                corners.union(sameDirection ? first : next(first), he);
+                corners.union(sameDirection ? next(first) : first, next(he));
+            } else if (edgeFaceCount[edge] == 3) {
+                numberOfNonManifoldEdges++;
+            }
+        }
+
+        // Boundary edges and loops
+        UnionFind boundaryVertices = new UnionFind(numberOfVertices);
+        boolean[] isBoundaryVertex = new boolean[numberOfVertices];
+        for (int edge = 0; edge < numberOfEdges; edge++) {
+            if (edgeFaceCount[edge] == 1) {
+                numberOfBoundaryEdges++;
+                int he = edgeFirstHalfEdge[edge];
+                int a = triangleIndices[he];
+                int b = triangleIndices[next(he)];
+                isBoundaryVertex[a] = true;
+                isBoundaryVertex[b] = true;
+                boundaryVertices.union(a, b);
+            }
+        }
+        for (int v = 0; v < numberOfVertices; v++) {
+            if (isBoundaryVertex[v] && boundaryVertices.find(v) == v) {
+                numberOfBoundaryLoops++;
+            }
+        }
+
+        // Fans per vertex
+        int[] numberOfFans = new int[numberOfVertices];
+        for (int corner = 0; corner < numberOfHalfEdges; corner++) {
+            if (corners.find(corner) == corner) {
+                numberOfFans[triangleIndices[corner]]++;
+            }
+        }
+        for (int v = 0; v < numberOfVertices; v++) {
+            if (numberOfFans[v] > 0) {
+                numberOfReferencedVertices++;
+            }
+            if (numberOfFans[v] > 1) {
+                numberOfNonManifoldVertices++;
+            }
+        }
+
+        // Components
+        numberOfComponents = faces.getNumberOfSets();
+        triangleComponents = new int[numberOfTriangles];
+        int[] rootComponent = new int[numberOfTriangles];
+        int component = 0;
+        for (int f = 0; f < numberOfTriangles; f++) {
+            if (faces.find(f) == f) {
+                rootComponent[f] = component++;
+            }
+        }
+        for (int f = 0; f < numberOfTriangles; f++) {
+            triangleComponents[f] = rootComponent[faces.find(f)];
+        }
+    }
+
+    /**
+     * Next half edge within the triangle (half edge he = 3 * triangle + corner).
+     */
+    private static int next(int he) {
+        return he % 3 == 2 ? he - 2 : he + 1;
+    }
+
+    /**
+     * Returns true if all edges have at most two faces and all vertices a single fan.
+     */
+    public boolean isManifold() {
+        return numberOfNonManifoldEdges == 0 && numberOfNonManifoldVertices == 0;
+    }
+
+    /**
+     * Returns true if the mesh is manifold and without boundary.
+     */
+    public boolean isClosedManifold() {
+        return isManifold() && !hasBoundary();
+    }
+
+    public boolean hasBoundary() {
+        return numberOfBoundaryEdges > 0;
+    }
+
+    /**
+     * Returns true if all adjacent triangles have compatible winding.
+     */
+    public boolean isConsistentlyOriented() {
+        return numberOfInconsistentEdges == 0;
+    }
+
+    /**
+     * Euler characteristic V - E + F (referenced vertices only).
+     */
+    public int getEulerCharacteristic() {
+        return numberOfReferencedVertices - numberOfEdges + numberOfTriangles;
+    }
+
+    /**
+     * Total genus of all components: (2 * components - boundary loops - Euler characteristic) / 2. Only meaningful
+     * for orientable manifold meshes.
+     */
+    public int getGenus() {
+        return (2 * numberOfComponents - numberOfBoundaryLoops - getEulerCharacteristic()) / 2;
+    }
+
+    @Override
+    public String toString() {
+        return "MeshTopology[triangles: " + numberOfTriangles + ", vertices: " + numberOfReferencedVertices
+                + ", edges: " + numberOfEdges + ", components: " + numberOfComponents
+                + ", boundary edges: " + numberOfBoundaryEdges + ", boundary loops: " + numberOfBoundaryLoops
+                + ", non-manifold edges: " + numberOfNonManifoldEdges
+                + ", non-manifold vertices: " + numberOfNonManifoldVertices
+                + ", inconsistent edges: " + numberOfInconsistentEdges + ", genus: " + getGenus() + "]";
+    }
+
+    // +++ GETTER/SETTER +++++++++++++++++++++++++
+
+    public int getNumberOfEdges() {
+        return numberOfEdges;
+    }
+
+    public int getNumberOfBoundaryEdges() {
+        return numberOfBoundaryEdges;
+    }
+
+    public int getNumberOfBoundaryLoops() {
+        return numberOfBoundaryLoops;
+    }
+
+    public int getNumberOfNonManifoldEdges() {
+        return numberOfNonManifoldEdges;
+    }
+
+    public int getNumberOfNonManifoldVertices() {
+        return numberOfNonManifoldVertices;
+    }
+
+    public int getNumberOfInconsistentEdges() {
+        return numberOfInconsistentEdges;
+    }
+
+    public int getNumberOfComponents() {
+        return numberOfComponents;
+    }
+
+    /**
+     * Component index (0..getNumberOfComponents() - 1) of the triangle.
+     */
+    public int getComponent(int triangleIndex) {
+        return triangleComponents[triangleIndex];
+    }
+}
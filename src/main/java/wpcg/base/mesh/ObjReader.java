@@ -31,13 +31,11 @@ public class ObjReader {
     // Subdirectory used to look for the material file (extracted from mesh file).
     private String directory = "";
 
-    // State of the import process
-    private TriangleMesh currentMesh = null;
+    // State of the import process: all objects and materials share the vertex pool of one mesh, materials are
+    // represented as triangle groups in the mesh.
+    private TriangleMesh mesh = null;
     private Material currentMaterial = null;
     private Map<String, Material> materials = null;
-    private List<TriangleMesh> meshes = new ArrayList<TriangleMesh>();
-    private int vertexIndexOffset = 0;
-    private int texCoordOffset = 0;
 
     /**
      * Lesen eines Dreiecksnetzes aus einer OBJ-Datei. Die Information wird in das
@@ -47,13 +45,10 @@ public class ObjReader {
      */
     public TriangleMesh read(final String filename) {
         // Setup
-        meshes.clear();
         directory = new File(filename).getParent() + "/";
-        currentMesh = new TriangleMesh();
-        meshes.add(currentMesh);
+        mesh = new TriangleMesh();
         materials = new HashMap<String, Material>();
-        vertexIndexOffset = 0;
-        texCoordOffset = 0;
+        currentMaterial = null;
         //textureCoordinates.clear();
 
         // Read input
@@ -72,37 +67,34 @@ public class ObjReader {
             return null;
         }
 
-        // Post-process meshes
-        for (Iterator<TriangleMesh> it = meshes.iterator(); it.hasNext(); ) {
-            TriangleMesh mesh = it.next();
-            if (mesh.getNumberOfTriangles() == 0) {
-                it.remove();
-                continue;
-            }
+        // Post-process mesh
+        if (mesh.getNumberOfTriangles() == 0) {
+            System.out.println("Could not find any meshes in OBJ file " + filename);
+            return null;
+        }
 
-            // Remove degenerated triangles
-            for (int i = 0; i < mesh.getNumberOfTriangles(); i++) {
-                Triangle t = mesh.getTriangle(i);
-                Vector3f a = mesh.getVertex(t.getVertexIndex(0)).position;
-                Vector3f b = mesh.getVertex(t.getVertexIndex(1)).position;
-                Vector3f c = mesh.getVertex(t.getVertexIndex(2)).position;
-                if (t.isDegenerated() || Triangle.getArea(a, b, c) < 1e-5) {
-                    mesh.removeTriangle(i);
-                    i--;
-                }
-            }
+        // Remove degenerated triangles
+        mesh.removeDegeneratedTriangles(1e-5);
 
-            mesh.computeTriangleNormals();
-            Logger.getInstance().debug("Successfully created triangle mesh with "
-                    + mesh.getNumberOfVertices() + " vertices and "
-                    + mesh.getNumberOfTriangles() + " triangles.");
-        }
+        mesh.computeTriangleNormals();
+        mesh.setTextureName(getTextureNameOfFirstTriangle(mesh));
+        Logger.getInstance().debug("Successfully created triangle mesh with "
+                + mesh.getNumberOfVertices() + " vertices, "
+                + mesh.getNumberOfTriangles() + " triangles and "
+                + mesh.getNumberOfTriangleGroups() + " material groups.");
+        return mesh;
+    }
 
-        if (meshes.size() == 0) {
-            System.out.println("Could not find any meshes in OBJ file " + filename);
+    /**
+     * Returns the texture name of the material group which contains the first triangle, null if there is none.
+     */
+    private static String getTextureNameOfFirstTriangle(TriangleMesh mesh) {
+        for (int i = 0; i < mesh.getNumberOfTriangleGroups(); i++) {
+            if (mesh.getTriangleGroup(i).getFirstTriangle() == 0 && mesh.getTriangleGroupEnd(i) > 0) {
+                return mesh.getTriangleGroup(i).getTextureName();
+            }
         }
-
-        return TriangleMeshTools.unite(meshes);
+        return null;
     }
 
 
@@ -135,12 +127,7 @@ public class ObjReader {
             parseUseMaterial(line);
         }
         if (operator.equals(OP_NEW_OBJECT)) {
-            // Neues (Teil-)Objekt
-            vertexIndexOffset += currentMesh.getNumberOfVertices();
-            texCoordOffset += currentMesh.getNumberOfTextureCoordinates();
-            currentMesh = new TriangleMesh();
-
-            meshes.add(currentMesh);
+            // Neues (Teil-)Objekt: the vertex pool is shared, OBJ indices are global anyway
         } else if (operator.equals(OP_USE_MTL)) {
             String[] components = line.split("\\s+");
             currentMaterial = null;
@@ -149,26 +136,16 @@ public class ObjReader {
                 // System.out.println("Assigned material: " + materalId);
                 Material mat = materials.get(materalId);
                 if (mat != null) {
-
-                    // Testing: add new mesh for each material
-                    // copy vertices and texture coordinates
-                    currentMesh = new TriangleMesh((TriangleMesh) currentMesh);
-                    currentMesh.clearTriangles();
-                    meshes.add(currentMesh);
-
+                    // New triangle group for each material, vertices and texture coordinates are shared
+                    mesh.beginTriangleGroup(mat);
                     currentMaterial = mat;
-                    currentMesh.setTextureName(null);
-                    if (mat.getTextureFilename() != null
-                            && mat.getTextureFilename().length() > 0) {
-                        currentMesh.setTextureName(mat.getTextureFilename());
-                    }
                 }
             }
         } else if (operator.equals(OP_VERTEX)) {
             // Lesen eines Vertex
             Vector3f position = parseVertex(line);
             if (position != null) {
-                currentMesh.addVertex(position);
+                mesh.addVertex(position);
             }
         } else if (operator.equals(OP_FACET)) {
             try {
@@ -181,7 +158,7 @@ public class ObjReader {
             // Lesen einer Texturkoordinate
             Vector2f t = parseTextureCoordinate(line);
             if (t != null) {
-                currentMesh.addTextureCoordinate(t);
+                mesh.addTextureCoordinate(t);
                 //textureCoordinates.add(t);
             }
         }
@@ -323,13 +300,13 @@ public class ObjReader {
         if (currentMaterial != null) {
             t.setColor(currentMaterial.getColor());
         }
-        currentMesh.addTriangle(t);
+        mesh.addTriangle(t);
     }
 
     private int getVertexIndexFromToken(String token) {
         String[] tokens = token.split("/");
         if (tokens.length > 0 && tokens[0].length() > 0) {
-            return Integer.parseInt(tokens[0]) - 1 - vertexIndexOffset;
+            return Integer.parseInt(tokens[0]) - 1;
         } else {
             return -1;
         }
@@ -338,7 +315,7 @@ public class ObjReader {
     private int getTexCoordIndexFromToken(String token) {
         String[] tokens = token.split("/");
         if (tokens.length > 1 && tokens[1].length() > 0) {
-            return Integer.parseInt(tokens[1]) - 1 - texCoordOffset;
+            return Integer.parseInt(tokens[1]) - 1;
         } else {
             return -1;
         }
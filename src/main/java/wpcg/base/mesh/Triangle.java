@@ -83,7 +83,20 @@ public class Triangle {
      * Compute and return the area of the triangle.
      */
     public static double getArea(Vector3f a, Vector3f b, Vector3f c) {
-        return b.subtract(a).cross(c.subtract(a)).length();
+        return getArea(a.x, a.y, a.z, b.x, b.y, b.z, c.x, c.y, c.z);
+    }
+
+    /**
+     * Compute and return the area of the triangle given by the coordinates of its corners (allocation-free).
+     */
+    public static double getArea(float ax, float ay, float az, float bx, float by, float bz,
+                                 float cx, float cy, float cz) {
+        double ux = bx - ax, uy = by - ay, uz = bz - az;
+        double vx = cx - ax, vy = cy - ay, vz = cz - az;
+        double nx = uy * vz - uz * vy;
+        double ny = uz * vx - ux * vz;
+        double nz = ux * vy - uy * vx;
+        return Math.sqrt(nx * nx + ny * ny + nz * nz);
     }
 
     /**
@@ -124,6 +137,15 @@ public class Triangle {
         }
     }
 
+    /**
+     * Replace each vertex index i by vertexMap[i] (required when vertices are merged or reordered).
+     */
+    public void remapVertexIndices(int[] vertexMap) {
+        for (int i = 0; i < 3; i++) {
+            vertexIndices[i] = vertexMap[vertexIndices[i]];
+        }
+    }
+
     @Override
     public String toString() {
         return String.format("Triangle");
@@ -0,0 +1,63 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+/**
+ * A group of consecutive triangles in a triangle mesh which share a material (e.g. a usemtl block in an OBJ file).
+ * The group only references a range in the triangle list, the vertices are shared with the rest of the mesh. The
+ * group ends where the next group in the mesh begins.
+ */
+public class TriangleGroup {
+
+    /**
+     * Material of the triangles in the group, may be null.
+     */
+    private Material material;
+
+    /**
+     * Index of the first triangle of the group in the triangle list of the mesh.
+     */
+    private int firstTriangle;
+
+    public TriangleGroup(Material material, int firstTriangle) {
+        this.material = material;
+        this.firstTriangle = firstTriangle;
+    }
+
+    public TriangleGroup(TriangleGroup group) {
+        this(group.material, group.firstTriangle);
+    }
+
+    /**
+     * Returns the name of the texture file of the material, null if there is none.
+     */
+    public String getTextureName() {
+        if (material == null || material.getTextureFilename() == null
+                || material.getTextureFilename().length() == 0) {
+            return null;
+        }
+        return material.getTextureFilename();
+    }
+
+    @Override
+    public String toString() {
+        return "TriangleGroup(" + material + ") @ " + firstTriangle;
+    }
+
+    // +++ GETTER/SETTER +++++++++++++++++++++++++
+
+    public Material getMaterial() {
+        return material;
+    }
+
+    public int getFirstTriangle() {
+        return firstTriangle;
+    }
+
+    public void setFirstTriangle(int firstTriangle) {
+        this.firstTriangle = firstTriangle;
+    }
+}
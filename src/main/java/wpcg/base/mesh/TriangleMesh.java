@@ -6,21 +6,34 @@
 package wpcg.base.mesh;
 
 import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingSphere;
 import com.jme3.math.ColorRGBA;
 import com.jme3.math.Vector2f;
 import com.jme3.math.Vector3f;
 import wpcg.base.Logger;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 
 /**
  * Implementation of a indexed vertex list triangle mesh.
  */
 public class TriangleMesh {
 
+    /**
+     * Meshes with at least this number of triangles are processed in parallel.
+     */
+    private static final int PARALLEL_THRESHOLD = 50000;
+
+    /**
+     * Number of consecutive triangles which share one chunk bounding box (see getChunkBoundingBox()).
+     */
+    public static final int TRIANGLES_PER_CHUNK = 1024;
+
     /**
      * Vertices.
      */
@@ -41,11 +54,49 @@ public class TriangleMesh {
      */
     private String textureName;
 
+    /**
+     * Groups of consecutive triangles sharing a material, sorted by their first triangle index. Triangles before
+     * the first group do not belong to any group.
+     */
+    private List<TriangleGroup> groups;
+
+    /**
+     * Cached triangle and vertex normals, null if the positions or triangles changed since they were computed.
+     */
+    private MeshNormals normals;
+
+    /**
+     * Bounds of the vertex positions, kept up to date incrementally when vertices are added or translated.
+     */
+    private MeshBounds bounds;
+
+    /**
+     * False if the positions changed and the bounds must be recomputed.
+     */
+    private boolean boundsValid;
+
+    /**
+     * Cached bounding sphere (center x, y, z, radius), null if not requested yet or invalidated.
+     */
+    private float[] boundingSphere;
+
+    /**
+     * Cached bounds of each chunk of TRIANGLES_PER_CHUNK consecutive triangles, null if not requested yet or
+     * invalidated.
+     */
+    private MeshBounds[] chunkBounds;
+
     public TriangleMesh() {
         textureCoordinates = new ArrayList<>();
         triangles = new ArrayList<>();
         this.vertices = new ArrayList<>();
         this.textureName = textureName;
+        groups = new ArrayList<>();
+        normals = null;
+        bounds = new MeshBounds();
+        boundsValid = true;
+        boundingSphere = null;
+        chunkBounds = null;
     }
 
     /**
@@ -65,6 +116,10 @@ public class TriangleMesh {
         for (int i = 0; i < mesh.getNumberOfTriangles(); i++) {
             addTriangle(new Triangle(mesh.getTriangle(i)));
         }
+        // Triangle groups
+        for (TriangleGroup group : mesh.groups) {
+            groups.add(new TriangleGroup(group));
+        }
         textureName = mesh.textureName;
     }
 
@@ -73,6 +128,7 @@ public class TriangleMesh {
      */
     public int addTriangle(int vertexIndex1, int vertexIndex2, int vertexIndex3) {
         triangles.add(new Triangle(vertexIndex1, vertexIndex2, vertexIndex3));
+        trianglesChanged();
         return triangles.size() - 1;
     }
 
@@ -81,14 +137,14 @@ public class TriangleMesh {
      */
     public void addTriangle(Triangle t) {
         triangles.add(t);
+        trianglesChanged();
     }
 
     /**
      * Create and add vertex for the given position, return index in vertex list.
      */
     public int addVertex(Vector3f position) {
-        vertices.add(new Vertex(position));
-        return vertices.size() - 1;
+        return addVertex(new Vertex(position));
     }
 
     /**
@@ -96,28 +152,111 @@ public class TriangleMesh {
      */
     public int addVertex(Vertex vertex) {
         vertices.add(vertex);
+        normals = null;
+        includeInBounds(vertex.position);
         return vertices.size() - 1;
     }
 
     /**
-     * Compute the normals for all triangles.
+     * Compute the normals for all triangles. Always recomputed from the current positions and triangles (also
+     * after direct edits without positionsChanged()), the result replaces the cached normals.
      */
     public void computeTriangleNormals() {
+        normals = null;
+        float[] triangleNormals = getNormals().getTriangleNormals();
         for (int triangleIndex = 0; triangleIndex < getNumberOfTriangles(); triangleIndex++) {
-            Triangle t = triangles.get(triangleIndex);
-            Vector3f a = vertices.get(t.getVertexIndex(0)).getPosition();
-            Vector3f b = vertices.get(t.getVertexIndex(1)).getPosition();
-            Vector3f c = vertices.get(t.getVertexIndex(2)).getPosition();
-            Vector3f u = b.subtract(a);
-            Vector3f v = c.subtract(a);
-            Vector3f normal = u.cross(v);
-            float norm = normal.length();
-            if (norm > 1e-8) {
-                normal = normal.mult(1.0f / norm);
-            } else {
-                Logger.getInstance().error("Invalid triangle - cannot compute normal.");
+            triangles.get(triangleIndex).getNormal().set(triangleNormals[3 * triangleIndex],
+                    triangleNormals[3 * triangleIndex + 1], triangleNormals[3 * triangleIndex + 2]);
+        }
+        if (normals.getNumberOfInvalidTriangles() > 0) {
+            Logger.getInstance().error("Invalid triangles - cannot compute normal for "
+                    + normals.getNumberOfInvalidTriangles() + " triangles.");
+        }
+    }
+
+    /**
+     * Compute the normals for all vertices (area weighted average of the adjacent triangle normals). Always
+     * recomputed from the current positions and triangles, like computeTriangleNormals().
+     */
+    public void computeVertexNormals() {
+        normals = null;
+        float[] vertexNormals = getNormals().getVertexNormals();
+        for (int vertexIndex = 0; vertexIndex < getNumberOfVertices(); vertexIndex++) {
+            vertices.get(vertexIndex).setNormal(new Vector3f(vertexNormals[3 * vertexIndex],
+                    vertexNormals[3 * vertexIndex + 1], vertexNormals[3 * vertexIndex + 2]));
+        }
+    }
+
+    /**
+     * Returns the triangle and vertex normals. They are cached until the mesh is changed through its own methods
+     * (adding/removing vertices or triangles, remapVertices(), positionsChanged()). Direct edits of positions
+     * or triangle indices are not detected, see getVertex() and getTriangle().
+     */
+    public MeshNormals getNormals() {
+        if (normals == null) {
+            normals = MeshNormals.compute(getPositionArray(), getTriangleIndexArray());
+        }
+        return normals;
+    }
+
+    /**
+     * Must be called after vertex positions were modified directly (via Vertex.getPosition()), invalidates the
+     * cached data derived from the positions.
+     */
+    public void positionsChanged() {
+        normals = null;
+        boundsValid = false;
+        boundingSphere = null;
+        chunkBounds = null;
+    }
+
+    /**
+     * Must be called after all vertex positions were moved by the offset (x, y, z). The cached bounds are moved
+     * along in O(1) instead of being recomputed, the normals are invariant under translation.
+     */
+    public void positionsTranslated(float x, float y, float z) {
+        bounds.translate(x, y, z);
+        if (boundingSphere != null) {
+            boundingSphere[0] += x;
+            boundingSphere[1] += y;
+            boundingSphere[2] += z;
+        }
+        if (chunkBounds != null) {
+            for (MeshBounds chunk : chunkBounds) {
+                chunk.translate(x, y, z);
+            }
+        }
+    }
+
+    /**
+     * Invalidate the cached data derived from the triangles.
+     */
+    private void trianglesChanged() {
+        normals = null;
+        chunkBounds = null;
+    }
+
+    /**
+     * Extend the cached bounding volumes by a new vertex position.
+     */
+    private void includeInBounds(Vector3f p) {
+        if (boundsValid) {
+            bounds.include(p);
+        }
+        if (boundingSphere != null) {
+            float dx = p.x - boundingSphere[0];
+            float dy = p.y - boundingSphere[1];
+            float dz = p.z - boundingSphere[2];
+            float d = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+            if (d > boundingSphere[3]) {
+                // Grow the sphere just enough to contain the old sphere and the new point.
+                float radius = (boundingSphere[3] + d) * 0.5f;
+                float shift = (radius - boundingSphere[3]) / d;
+                boundingSphere[0] += dx * shift;
+                boundingSphere[1] += dy * shift;
+                boundingSphere[2] += dz * shift;
+                boundingSphere[3] = radius;
             }
-            t.setNormal(normal);
         }
     }
 
@@ -129,11 +268,24 @@ public class TriangleMesh {
         return textureCoordinates.size() - 1;
     }
 
+    /**
+     * Start a new triangle group with the given material: all triangles added from now on belong to the group.
+     */
+    public void beginTriangleGroup(Material material) {
+        if (!groups.isEmpty() && groups.get(groups.size() - 1).getFirstTriangle() == triangles.size()) {
+            // Previous group is empty
+            groups.remove(groups.size() - 1);
+        }
+        groups.add(new TriangleGroup(material, triangles.size()));
+    }
+
     /**
      * Remove all triangles.
      */
     public void clearTriangles() {
         triangles.clear();
+        groups.clear();
+        trianglesChanged();
     }
 
     /**
@@ -141,31 +293,173 @@ public class TriangleMesh {
      */
     public void removeTriangle(int index) {
         triangles.remove(index);
+        trianglesChanged();
+        for (TriangleGroup group : groups) {
+            if (group.getFirstTriangle() > index) {
+                group.setFirstTriangle(group.getFirstTriangle() - 1);
+            }
+        }
     }
 
     /**
-     * Compute and return the AABB bounding box of the vertices.
+     * Remove all triangles with a duplicated vertex index or an area below minArea. The triangle list is filtered
+     * and compacted in a single pass (the area tests run in parallel for large meshes). Returns the number of
+     * removed triangles.
+     */
+    public int removeDegeneratedTriangles(double minArea) {
+        int n = triangles.size();
+        boolean[] keep = new boolean[n];
+        IntStream indices = IntStream.range(0, n);
+        if (n >= PARALLEL_THRESHOLD) {
+            indices = indices.parallel();
+        }
+        indices.forEach(i -> keep[i] = !isDegenerated(triangles.get(i), minArea));
+        List<Triangle> compacted = new ArrayList<>(n);
+        int groupIndex = 0;
+        for (int i = 0; i < n; i++) {
+            while (groupIndex < groups.size() && groups.get(groupIndex).getFirstTriangle() == i) {
+                groups.get(groupIndex++).setFirstTriangle(compacted.size());
+            }
+            if (keep[i]) {
+                compacted.add(triangles.get(i));
+            }
+        }
+        for (; groupIndex < groups.size(); groupIndex++) {
+            groups.get(groupIndex).setFirstTriangle(compacted.size());
+        }
+        triangles = compacted;
+        trianglesChanged();
+        return n - compacted.size();
+    }
+
+    /**
+     * Returns true if the triangle has a duplicated vertex index or an area below minArea.
+     */
+    private boolean isDegenerated(Triangle t, double minArea) {
+        if (t.isDegenerated()) {
+            return true;
+        }
+        Vector3f a = vertices.get(t.getA()).position;
+        Vector3f b = vertices.get(t.getB()).position;
+        Vector3f c = vertices.get(t.getC()).position;
+        return Triangle.getArea(a.x, a.y, a.z, b.x, b.y, b.z, c.x, c.y, c.z) < minArea;
+    }
+
+    /**
+     * Compact the vertex list: vertex i is moved to index vertexMap[i]. If multiple vertices are mapped to the
+     * same index, the first one is kept. The triangle vertex indices are remapped accordingly.
+     */
+    public void remapVertices(int[] vertexMap, int numberOfVertices) {
+        Vertex[] remapped = new Vertex[numberOfVertices];
+        for (int i = 0; i < vertices.size(); i++) {
+            if (remapped[vertexMap[i]] == null) {
+                remapped[vertexMap[i]] = vertices.get(i);
+            }
+        }
+        vertices = new ArrayList<>(Arrays.asList(remapped));
+        for (Triangle triangle : triangles) {
+            triangle.remapVertexIndices(vertexMap);
+        }
+        positionsChanged();
+    }
+
+    /**
+     * Return the AABB bounding box of the vertices. The bounds are maintained incrementally, they are only
+     * recomputed after positionsChanged().
      */
     public BoundingBox getBoundingBox() {
-        Vector3f ll = new Vector3f(Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE);
-        Vector3f ur = new Vector3f(Float.MIN_VALUE, Float.MIN_VALUE, Float.MIN_VALUE);
-        for (Vertex v : vertices) {
-            for (int i = 0; i < 3; i++) {
-                if (v.getPosition().get(i) < ll.get(i)) {
-                    ll.set(i, v.getPosition().get(i));
-                }
-                if (v.getPosition().get(i) > ur.get(i)) {
-                    ur.set(i, v.getPosition().get(i));
-                }
+        if (!boundsValid) {
+            bounds.clear();
+            for (Vertex v : vertices) {
+                bounds.include(v.position);
             }
+            boundsValid = true;
+        }
+        return bounds.toBoundingBox();
+    }
+
+    /**
+     * Return a bounding sphere of the vertices (centered in the bounding box). Computed on first request, then
+     * maintained like the bounding box.
+     */
+    public BoundingSphere getBoundingSphere() {
+        if (boundingSphere == null) {
+            BoundingBox box = getBoundingBox();
+            Vector3f center = box.getCenter();
+            float sqrRadius = 0;
+            for (Vertex v : vertices) {
+                sqrRadius = Math.max(sqrRadius, v.position.distanceSquared(center));
+            }
+            boundingSphere = new float[]{center.x, center.y, center.z, (float) Math.sqrt(sqrRadius)};
+        }
+        return new BoundingSphere(boundingSphere[3],
+                new Vector3f(boundingSphere[0], boundingSphere[1], boundingSphere[2]));
+    }
+
+    /**
+     * Returns the number of triangle chunks (TRIANGLES_PER_CHUNK consecutive triangles each).
+     */
+    public int getNumberOfChunks() {
+        return (triangles.size() + TRIANGLES_PER_CHUNK - 1) / TRIANGLES_PER_CHUNK;
+    }
+
+    /**
+     * Return the AABB bounding box of the triangles in the given chunk, e.g. to cull whole chunks at once. The
+     * chunk bounds are computed in parallel on first request and cached.
+     */
+    public BoundingBox getChunkBoundingBox(int chunkIndex) {
+        if (chunkBounds == null) {
+            MeshBounds[] chunks = new MeshBounds[getNumberOfChunks()];
+            IntStream.range(0, chunks.length).parallel().forEach(chunk -> {
+                MeshBounds chunkBox = new MeshBounds();
+                int end = Math.min(triangles.size(), (chunk + 1) * TRIANGLES_PER_CHUNK);
+                for (int i = chunk * TRIANGLES_PER_CHUNK; i < end; i++) {
+                    Triangle t = triangles.get(i);
+                    chunkBox.include(vertices.get(t.getA()).position);
+                    chunkBox.include(vertices.get(t.getB()).position);
+                    chunkBox.include(vertices.get(t.getC()).position);
+                }
+                chunks[chunk] = chunkBox;
+            });
+            chunkBounds = chunks;
+        }
+        return chunkBounds[chunkIndex].toBoundingBox();
+    }
+
+    /**
+     * Returns the vertex positions as flat array (x, y, z per vertex).
+     */
+    public float[] getPositionArray() {
+        float[] positions = new float[3 * vertices.size()];
+        for (int i = 0; i < vertices.size(); i++) {
+            Vector3f p = vertices.get(i).position;
+            positions[3 * i] = p.x;
+            positions[3 * i + 1] = p.y;
+            positions[3 * i + 2] = p.z;
+        }
+        return positions;
+    }
+
+    /**
+     * Returns the triangle vertex indices as flat array (3 indices per triangle).
+     */
+    public int[] getTriangleIndexArray() {
+        int[] indices = new int[3 * triangles.size()];
+        for (int i = 0; i < triangles.size(); i++) {
+            Triangle t = triangles.get(i);
+            indices[3 * i] = t.getA();
+            indices[3 * i + 1] = t.getB();
+            indices[3 * i + 2] = t.getC();
         }
-        Vector3f extend = ur.subtract(ll);
-        BoundingBox bbox = new BoundingBox(ur.add(ll).mult(0.5f), extend.x, extend.y, extend.z);
-        return bbox;
+        return indices;
     }
 
     // +++ GETTER/SETTER +++++++++++++++++++++++
 
+    /**
+     * Returns the vertex object (not a copy). After modifying its position, positionsChanged() (or
+     * positionsTranslated()) must be called, otherwise the cached normals and bounds are stale.
+     */
     public Vertex getVertex(int index) {
         return vertices.get(index);
     }
@@ -178,6 +472,10 @@ public class TriangleMesh {
         return vertices.size();
     }
 
+    /**
+     * Returns the triangle object (not a copy). After modifying its vertex indices, positionsChanged() must be
+     * called, otherwise the cached normals and chunk bounds are stale.
+     */
     public Triangle getTriangle(int triangleIndex) {
         return triangles.get(triangleIndex);
     }
@@ -190,6 +488,21 @@ public class TriangleMesh {
         return textureCoordinates.size();
     }
 
+    public TriangleGroup getTriangleGroup(int groupIndex) {
+        return groups.get(groupIndex);
+    }
+
+    public int getNumberOfTriangleGroups() {
+        return groups.size();
+    }
+
+    /**
+     * Returns the index after the last triangle of the group.
+     */
+    public int getTriangleGroupEnd(int groupIndex) {
+        return groupIndex + 1 < groups.size() ? groups.get(groupIndex + 1).getFirstTriangle() : triangles.size();
+    }
+
     public void setColor(ColorRGBA color) {
         for (Triangle triangle : triangles) {
             triangle.setColor(color);
@@ -202,4 +515,8 @@ public class TriangleMesh {
     public void setTextureName(String textureFilename) {
         this.textureName = textureFilename;
     }
+
+    public String getTextureName() {
+        return textureName;
+    }
 }
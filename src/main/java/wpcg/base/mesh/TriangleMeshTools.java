@@ -17,7 +17,10 @@ package wpcg.base.mesh;
 import com.jme3.math.Vector2f;
 import com.jme3.math.Vector3f;
 import wpcg.base.Logger;
+import wpcg.base.LongIntHashMap;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -38,15 +41,22 @@ public class TriangleMeshTools {
         for (int i = 0; i < otherMesh.getNumberOfTextureCoordinates(); i++) {
             baseMesh.addTextureCoordinate(new Vector2f(otherMesh.getTextureCoordinate(i)));
         }
+        if (baseMesh.getNumberOfTriangleGroups() > 0 && (otherMesh.getNumberOfTriangleGroups() == 0
+                || otherMesh.getTriangleGroup(0).getFirstTriangle() > 0)) {
+            // Ungrouped triangles of the other mesh must not end up in the last group of the base mesh
+            baseMesh.beginTriangleGroup(null);
+        }
+        int groupIndex = 0;
         for (int i = 0; i < otherMesh.getNumberOfTriangles(); i++) {
+            while (groupIndex < otherMesh.getNumberOfTriangleGroups()
+                    && otherMesh.getTriangleGroup(groupIndex).getFirstTriangle() == i) {
+                baseMesh.beginTriangleGroup(otherMesh.getTriangleGroup(groupIndex++).getMaterial());
+            }
             Triangle t = new Triangle(otherMesh.getTriangle(i));
             t.addVertexIndexOffset(vertexOffset);
             t.addTexCoordOffset(texCoordOffset);
             baseMesh.addTriangle(t);
         }
-
-        vertexOffset += otherMesh.getNumberOfVertices();
-        texCoordOffset += otherMesh.getNumberOfTextureCoordinates();
     }
 
     /**
@@ -59,33 +69,88 @@ public class TriangleMeshTools {
         }
 
         TriangleMesh mesh = meshes.get(0);
-
-        int vertexOffset = mesh.getNumberOfVertices();
-        int texCoordOffset = mesh.getNumberOfTextureCoordinates();
         for (int meshIndex = 1; meshIndex < meshes.size(); meshIndex++) {
-            TriangleMesh m = meshes.get(meshIndex);
-            // Vertices
-            for (int i = 0; i < m.getNumberOfVertices(); i++) {
-                mesh.addVertex(new Vertex(m.getVertex(i)));
-            }
-            for (int i = 0; i < m.getNumberOfTextureCoordinates(); i++) {
-                mesh.addTextureCoordinate(new Vector2f(m.getTextureCoordinate(i)));
-            }
-            for (int i = 0; i < m.getNumberOfTriangles(); i++) {
-                Triangle t = new Triangle(m.getTriangle(i));
-                t.addVertexIndexOffset(vertexOffset);
-                t.addTexCoordOffset(texCoordOffset);
-                mesh.addTriangle(t);
-            }
-
-            vertexOffset += m.getNumberOfVertices();
-            texCoordOffset += m.getNumberOfTextureCoordinates();
+            unite(mesh, meshes.get(meshIndex));
         }
-
         return mesh;
     }
 
 
+    /**
+     * Split the mesh into its connected components (triangles sharing an edge, found via union-find). Each
+     * component becomes a compact mesh with only its own vertices and texture coordinates, so its bounding box
+     * (getBoundingBox()) covers the component only. Triangle order and groups are preserved within a component.
+     */
+    public static List<TriangleMesh> splitComponents(TriangleMesh mesh) {
+        MeshTopology topology = MeshTopology.from(mesh);
+        int numberOfComponents = topology.getNumberOfComponents();
+
+        // Counting sort of the triangles by component (stable)
+        int[] componentStart = new int[numberOfComponents + 1];
+        for (int i = 0; i < mesh.getNumberOfTriangles(); i++) {
+            componentStart[topology.getComponent(i) + 1]++;
+        }
+        for (int c = 0; c < numberOfComponents; c++) {
+            componentStart[c + 1] += componentStart[c];
+        }
+        int[] sortedTriangles = new int[mesh.getNumberOfTriangles()];
+        int[] insert = Arrays.copyOf(componentStart, numberOfComponents);
+        for (int i = 0; i < mesh.getNumberOfTriangles(); i++) {
+            sortedTriangles[insert[topology.getComponent(i)]++] = i;
+        }
+        int[] triangleGroups = new int[mesh.getNumberOfTriangles()];
+        Arrays.fill(triangleGroups, -1);
+        for (int g = 0; g < mesh.getNumberOfTriangleGroups(); g++) {
+            Arrays.fill(triangleGroups, mesh.getTriangleGroup(g).getFirstTriangle(), mesh.getTriangleGroupEnd(g), g);
+        }
+
+        // Vertex/texture coordinate maps are valid for the component stored next to them. A vertex shared by
+        // two components (touching in a single vertex) is copied into both.
+        int[] vertexMap = new int[mesh.getNumberOfVertices()];
+        int[] vertexComponent = new int[mesh.getNumberOfVertices()];
+        Arrays.fill(vertexComponent, -1);
+        int[] texCoordMap = new int[mesh.getNumberOfTextureCoordinates()];
+        int[] texCoordComponent = new int[mesh.getNumberOfTextureCoordinates()];
+        Arrays.fill(texCoordComponent, -1);
+        List<TriangleMesh> components = new ArrayList<>(numberOfComponents);
+        for (int c = 0; c < numberOfComponents; c++) {
+            TriangleMesh component = new TriangleMesh();
+            component.setTextureName(mesh.getTextureName());
+            int group = -1;
+            for (int i = componentStart[c]; i < componentStart[c + 1]; i++) {
+                int triangleIndex = sortedTriangles[i];
+                Triangle t = new Triangle(mesh.getTriangle(triangleIndex));
+                int[] texCoords = new int[3];
+                for (int k = 0; k < 3; k++) {
+                    int v = t.getVertexIndex(k);
+                    if (vertexComponent[v] != c) {
+                        vertexComponent[v] = c;
+                        vertexMap[v] = component.addVertex(new Vertex(mesh.getVertex(v)));
+                    }
+                    texCoords[k] = t.getTextureCoordinate(k);
+                    if (texCoords[k] >= 0 && texCoords[k] < texCoordMap.length) {
+                        if (texCoordComponent[texCoords[k]] != c) {
+                            texCoordComponent[texCoords[k]] = c;
+                            texCoordMap[texCoords[k]] = component.addTextureCoordinate(
+                                    new Vector2f(mesh.getTextureCoordinate(texCoords[k])));
+                        }
+                        texCoords[k] = texCoordMap[texCoords[k]];
+                    }
+                }
+                t.remapVertexIndices(vertexMap);
+                t.setTextureCoordinates(texCoords[0], texCoords[1], texCoords[2]);
+                if (triangleGroups[triangleIndex] != group) {
+                    group = triangleGroups[triangleIndex];
+                    component.beginTriangleGroup(group >= 0 ? mesh.getTriangleGroup(group).getMaterial() : null);
+                }
+                component.addTriangle(t);
+            }
+            components.add(component);
+        }
+        Logger.getInstance().debug("Split mesh into " + numberOfComponents + " components.");
+        return components;
+    }
+
     /**
      * Move all vertices with the offset vector (x, y, z)
      */
@@ -94,6 +159,7 @@ public class TriangleMeshTools {
             Vertex v = mesh.getVertex(i);
             v.getPosition().set(v.getPosition().x + x, v.getPosition().y + y, v.getPosition().z + z);
         }
+        mesh.positionsTranslated(x, y, z);
     }
 
     /**
@@ -103,41 +169,92 @@ public class TriangleMeshTools {
         translate(mesh, t.x, t.y, t.z);
     }
 
+    /**
+     * Shrink-free (Taubin) smoothing with uniform weights.
+     */
+    public static void smooth(TriangleMesh mesh, int iterations) {
+        smooth(mesh, iterations, MeshSmoothing.Weights.UNIFORM);
+    }
+
+    /**
+     * Shrink-free (Taubin) smoothing with the given weights. Boundary vertices are kept in place.
+     */
+    public static void smooth(TriangleMesh mesh, int iterations, MeshSmoothing.Weights weights) {
+        new MeshSmoothing(weights).taubin(mesh, MeshSmoothing.DEFAULT_LAMBDA, MeshSmoothing.DEFAULT_MU, iterations);
+    }
+
     /**
      * Merge all vertices which are closer to one another than numerical accuracy.
      */
     public static void mergeVertices(TriangleMesh mesh) {
-        int numRemoved = 0;
-        for (int i = 0; i < mesh.getNumberOfVertices(); i++) {
-            for (int j = i + 1; j < mesh.getNumberOfVertices(); j++) {
-                if (mesh.getVertex(i).getPosition().subtract(mesh.getVertex(j).getPosition()).length()
-                        < 1e-5) {
-                    for (int t = 0; t < mesh.getNumberOfTriangles(); t++) {
-                        Triangle triangle = mesh.getTriangle(t);
-                        triangle.replaceVertexIndex(i, j);
-                    }
-                    // Deprecate vertex j
-                    mesh.getVertex(j).getPosition().set(new Vector3f(Float.NaN, Float.NaN, Float.NaN));
-                    numRemoved++;
-                }
+        mergeVertices(mesh, 1e-5f);
+    }
+
+    /**
+     * Merge all vertices which are closer to one another than epsilon. The positions are quantized into a hash grid
+     * with cell size epsilon, so only the 27 cells around a vertex need to be searched for a merge partner: O(n)
+     * instead of O(n^2). The vertex list is compacted and the triangles are remapped in a single pass.
+     */
+    public static void mergeVertices(TriangleMesh mesh, float epsilon) {
+        int n = mesh.getNumberOfVertices();
+        float sqrEpsilon = epsilon * epsilon;
+        float invCellSize = 1.0f / epsilon;
+
+        // Grid cell -> last representative vertex in the cell, further representatives are chained via nextInCell.
+        LongIntHashMap cells = new LongIntHashMap(n);
+        int[] nextInCell = new int[n];
+        int[] vertexMap = new int[n];
+        int numberOfVertices = 0;
+        for (int i = 0; i < n; i++) {
+            Vector3f p = mesh.getVertex(i).getPosition();
+            long cx = (long) Math.floor(p.x * invCellSize);
+            long cy = (long) Math.floor(p.y * invCellSize);
+            long cz = (long) Math.floor(p.z * invCellSize);
+            int representative = findVertexInGrid(mesh, cells, nextInCell, p, cx, cy, cz, sqrEpsilon);
+            if (representative >= 0) {
+                vertexMap[i] = vertexMap[representative];
+            } else {
+                vertexMap[i] = numberOfVertices++;
+                long cell = getCellKey(cx, cy, cz);
+                nextInCell[i] = cells.get(cell);
+                cells.put(cell, i);
             }
         }
+        int numRemoved = n - numberOfVertices;
+        mesh.remapVertices(vertexMap, numberOfVertices);
+
         // Remove all degenerated triangles.
-        for (int i = 0; i < mesh.getNumberOfTriangles(); i++) {
-            if (mesh.getTriangle(i).isDegenerated()) {
-                mesh.removeTriangle(i);
-                i--;
-            } else {
-                Triangle t = mesh.getTriangle(i);
-                Vector3f a = mesh.getVertex(t.getVertexIndex(0)).position;
-                Vector3f b = mesh.getVertex(t.getVertexIndex(1)).position;
-                Vector3f c = mesh.getVertex(t.getVertexIndex(2)).position;
-                if (Triangle.getArea(a, b, c) < 1e-5) {
-                    mesh.removeTriangle(i);
-                    i--;
+        mesh.removeDegeneratedTriangles(1e-5);
+        Logger.getInstance().debug("Removed " + numRemoved + " vertices with same position.");
+    }
+
+    /**
+     * Search the 27 grid cells around (cx, cy, cz) for a representative vertex closer to p than epsilon. Returns
+     * the vertex index or -1 if there is none.
+     */
+    private static int findVertexInGrid(TriangleMesh mesh, LongIntHashMap cells, int[] nextInCell, Vector3f p,
+                                        long cx, long cy, long cz, float sqrEpsilon) {
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    int candidate = cells.get(getCellKey(cx + dx, cy + dy, cz + dz));
+                    while (candidate != LongIntHashMap.NO_VALUE) {
+                        if (mesh.getVertex(candidate).getPosition().distanceSquared(p) < sqrEpsilon) {
+                            return candidate;
+                        }
+                        candidate = nextInCell[candidate];
+                    }
                 }
             }
         }
-        Logger.getInstance().debug("Removed " + numRemoved + " vertices with same position.");
+        return -1;
+    }
+
+    /**
+     * Pack the grid cell coordinates into one key (21 bits each). Cells which wrap around share a key, which
+     * is fine since the candidates are checked by distance anyway.
+     */
+    private static long getCellKey(long cx, long cy, long cz) {
+        return ((cx & 0x1FFFFF) << 42) | ((cy & 0x1FFFFF) << 21) | (cz & 0x1FFFFF);
     }
 }